@@ -0,0 +1,92 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseModifiableMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
+import sunmisc.utils.concurrent.memory.NativeLongMemory;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitwiseBulkOps {
+
+    @Param({"1024", "65536"})
+    private int size;
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(BitwiseBulkOps.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private BitwiseModifiableMemory<Long> boxed, boxedSrc;
+    private LongSegmentsMemory primitive, primitiveSrc;
+    private NativeLongMemory offHeapSrc;
+
+    @Setup
+    public void prepare() {
+        final long[] words = ThreadLocalRandom.current().longs(this.size).toArray();
+        this.boxed = new BitwiseSegmentsMemory<>(long.class, this.size);
+        this.boxedSrc = new BitwiseSegmentsMemory<>(long.class, this.size);
+        this.primitive = new LongSegmentsMemory(this.size);
+        this.primitiveSrc = new LongSegmentsMemory(this.size);
+        this.offHeapSrc = new NativeLongMemory(this.size);
+        this.boxedSrc.copyFrom(Arrays.stream(words).boxed().toArray(Long[]::new), 0, 0, this.size);
+        this.primitiveSrc.copyFrom(words, 0, 0, this.size);
+        this.offHeapSrc.copyFrom(words, 0, 0, this.size);
+    }
+
+    @TearDown
+    public void close() {
+        this.offHeapSrc.close();
+    }
+
+    @Benchmark
+    public BitwiseModifiableMemory<Long> xorBoxed() {
+        final BitwiseModifiableMemory<Long> memory = this.boxed;
+        for (int i = 0, n = memory.length(); i < n; ++i) {
+            memory.fetchAndBitwiseXor(i, this.boxedSrc.fetch(i));
+        }
+        return memory;
+    }
+
+    @Benchmark
+    public LongSegmentsMemory xorSegments() {
+        this.primitive.bitwiseXor(this.primitiveSrc);
+        return this.primitive;
+    }
+
+    @Benchmark
+    public LongSegmentsMemory xorChunked() {
+        this.primitive.bitwiseXor(this.offHeapSrc);
+        return this.primitive;
+    }
+
+    @Benchmark
+    public long bitCountBoxed() {
+        final BitwiseModifiableMemory<Long> memory = this.boxedSrc;
+        long count = 0;
+        for (int i = 0, n = memory.length(); i < n; ++i) {
+            count += Long.bitCount(memory.fetch(i));
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long bitCountBulk() {
+        return this.primitiveSrc.bitCount();
+    }
+}
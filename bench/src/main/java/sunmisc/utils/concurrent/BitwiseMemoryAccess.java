@@ -0,0 +1,85 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.BitwiseModifiableMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitwiseMemoryAccess {
+
+    private static final int SIZE = 1 << 13;
+    private static final VarHandle LONGS
+            = MethodHandles.arrayElementVarHandle(long[].class);
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(BitwiseMemoryAccess.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private long[] array;
+    private LongSegmentsMemory primitive;
+    private BitwiseModifiableMemory<Long> boxed;
+
+    @Setup
+    public void prepare() {
+        this.array = new long[SIZE];
+        this.primitive = new LongSegmentsMemory(SIZE);
+        this.boxed = new BitwiseSegmentsMemory<>(long.class, SIZE);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long array() {
+        return this.arrayContended();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long arrayContended() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        return (long) LONGS.getAndBitwiseOr(this.array, r, 1L << r);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long primitive() {
+        return this.primitiveContended();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long primitiveContended() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        return this.primitive.fetchAndBitwiseOrLong(r, 1L << r);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long boxed() {
+        return this.boxedContended();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Long boxedContended() {
+        final int r = ThreadLocalRandom.current().nextInt(SIZE);
+        return this.boxed.fetchAndBitwiseOr(r, 1L << r);
+    }
+}
@@ -0,0 +1,67 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.CombiningMemory;
+import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.SegmentsMemory;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedTransform {
+
+    private static final int HOT = 4;
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(ContendedTransform.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    private ModifiableMemory<Integer> direct;
+    private ModifiableMemory<Integer> combining;
+
+    @Setup
+    public void prepare() {
+        this.direct = new SegmentsMemory<>(HOT);
+        this.direct.fill(0, HOT, 0);
+        this.combining = new CombiningMemory<>(new SegmentsMemory<>(HOT));
+        this.combining.fill(0, HOT, 0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ModifiableMemory<Integer> direct() {
+        return this.directContended();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ModifiableMemory<Integer> directContended() {
+        this.direct.transform((int) Thread.currentThread().threadId() & (HOT - 1), x -> x + 1);
+        return this.direct;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ModifiableMemory<Integer> combining() {
+        return this.combiningContended();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ModifiableMemory<Integer> combiningContended() {
+        this.combining.transform((int) Thread.currentThread().threadId() & (HOT - 1), x -> x + 1);
+        return this.combining;
+    }
+}
@@ -0,0 +1,63 @@
+package sunmisc.utils.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sunmisc.utils.concurrent.memory.LongModifiableMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
+import sunmisc.utils.concurrent.memory.PaddedLongMemory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaddedCounters {
+
+    private static final int SIZE = 1 << 6;
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(PaddedCounters.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    public enum Layout { DENSE, PADDED }
+
+    private @Param Layout layout;
+    private LongModifiableMemory memory;
+
+    @Setup
+    public void prepare() {
+        this.memory = switch (this.layout) {
+            case DENSE -> new LongSegmentsMemory(SIZE);
+            case PADDED -> new PaddedLongMemory(SIZE);
+        };
+    }
+
+    // every thread owns a neighbouring cell
+    @State(Scope.Thread)
+    public static class Slot {
+        private static final AtomicInteger IDS = new AtomicInteger();
+        private final int index = IDS.getAndIncrement() & (SIZE - 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long add(final Slot slot) {
+        return this.addContended(slot);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long addContended(final Slot slot) {
+        return this.memory.fetchAndAddLong(slot.index, 1L);
+    }
+}
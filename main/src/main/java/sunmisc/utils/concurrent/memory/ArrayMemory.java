@@ -5,6 +5,7 @@ import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.StringJoiner;
+import java.util.function.ObjIntConsumer;
 
 @SuppressWarnings("unchecked")
 public final class ArrayMemory<E> implements ModifiableMemory<E> {
@@ -53,6 +54,93 @@ public final class ArrayMemory<E> implements ModifiableMemory<E> {
         return AA.compareAndSet(this.array, index, expectedValue, newValue);
     }
 
+    @Override
+    public E fetchPlain(final int index) {
+        return (E) AA.get(this.array, index);
+    }
+
+    @Override
+    public E fetchOpaque(final int index) {
+        return (E) AA.getOpaque(this.array, index);
+    }
+
+    @Override
+    public void storePlain(final int index, final E value) {
+        AA.set(this.array, index, value);
+    }
+
+    @Override
+    public void storeOpaque(final int index, final E value) {
+        AA.setOpaque(this.array, index, value);
+    }
+
+    @Override
+    public boolean weakCompareAndStore(final int index,
+                                       final E expectedValue,
+                                       final E newValue
+    ) throws IndexOutOfBoundsException {
+        return AA.weakCompareAndSetPlain(this.array, index, expectedValue, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreRelease(final int index,
+                                              final E expectedValue,
+                                              final E newValue
+    ) throws IndexOutOfBoundsException {
+        return AA.weakCompareAndSetRelease(this.array, index, expectedValue, newValue);
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super E> action) {
+        Objects.checkFromToIndex(from, to, this.array.length);
+        Objects.requireNonNull(action);
+        for (int i = from; i < to; ++i) {
+            action.accept((E) AA.getAcquire(this.array, i), i);
+        }
+    }
+
+    // bulk plain accesses, fences give them acquire/release semantics
+    @Override
+    public void fill(final int from, final int to, final E value) {
+        Objects.checkFromToIndex(from, to, this.array.length);
+        VarHandle.releaseFence();
+        Arrays.fill(this.array, from, to, value);
+    }
+
+    @Override
+    public void copyFrom(final E[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.array.length);
+        VarHandle.releaseFence();
+        System.arraycopy(src, srcPos, this.array, dstPos, length);
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final E[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.array.length);
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        System.arraycopy(this.array, srcPos, dst, dstPos, length);
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final ModifiableMemory<? super E> dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.array.length);
+        Objects.checkFromIndexSize(dstPos, length, dst.length());
+        dst.copyFrom(this.array, srcPos, dstPos, length);
+    }
+
     @Override
     public ModifiableMemory<E> realloc(final int size) throws OutOfMemoryError {
         return new ArrayMemory<>(Arrays.copyOf(this.array, size));
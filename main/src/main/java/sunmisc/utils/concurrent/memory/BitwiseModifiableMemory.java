@@ -13,4 +13,9 @@ public interface BitwiseModifiableMemory<E extends Number>
 
     @Override
     BitwiseModifiableMemory<E> realloc(int size) throws OutOfMemoryError;
+
+    @Override
+    default BitwiseModifiableMemory<E> trim(final int occupied, final TrimPolicy policy) {
+        return (BitwiseModifiableMemory<E>) ModifiableMemory.super.trim(occupied, policy);
+    }
 }
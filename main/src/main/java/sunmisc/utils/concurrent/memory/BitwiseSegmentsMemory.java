@@ -3,29 +3,30 @@ package sunmisc.utils.concurrent.memory;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.StringJoiner;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 
 public final class BitwiseSegmentsMemory<E extends Number>
         implements BitwiseModifiableMemory<E> {
 
-    private final BitwiseModifiableMemory<E>[] areas;
-    private final Function<Integer, Area<E>> mapped;
+    private final Area<E>[] areas;
+    private final IntFunction<Area<E>> mapped;
 
-    private BitwiseSegmentsMemory(final BitwiseModifiableMemory<E>[] areas,
-                                  final Function<Integer, Area<E>> mapped) {
+    private BitwiseSegmentsMemory(final Area<E>[] areas,
+                                  final IntFunction<Area<E>> mapped) {
         this.areas = areas;
         this.mapped = mapped;
     }
 
     public BitwiseSegmentsMemory(final Class<E> componentType, final int size) {
-        final Function<Integer, Area<E>> map = typeToArea(componentType);
+        final IntFunction<Area<E>> map = typeToArea(componentType);
         final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
         @SuppressWarnings("unchecked")
-        final BitwiseModifiableMemory<E>[] areas = new BitwiseModifiableMemory[segments];
+        final Area<E>[] areas = new Area[segments];
         areas[0] = map.apply(2);
         for (int segment = 1; segment < segments; ++segment) {
             areas[segment] = map.apply(1 << segment);
@@ -35,8 +36,8 @@ public final class BitwiseSegmentsMemory<E extends Number>
     }
 
     @SuppressWarnings("unchecked")
-    private static <E extends Number> Function<Integer, Area<E>> typeToArea(final Class<E> type) {
-        final Function<Integer, Area<E>> map;
+    private static <E extends Number> IntFunction<Area<E>> typeToArea(final Class<E> type) {
+        final IntFunction<Area<E>> map;
         if (type == byte.class) {
             map = len -> (Area<E>) new AreaBytes(new byte[len]);
         } else if (type == short.class) {
@@ -55,15 +56,16 @@ public final class BitwiseSegmentsMemory<E extends Number>
         return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
     }
 
-    private int indexForArea(final BitwiseModifiableMemory<E> area, final int index) {
+    private static int indexForArea(final Area<?> area, final int index) {
         return index < 2 ? index : index - area.length();
     }
 
+    // a smaller size keeps the leading segments
     @Override
     public BitwiseModifiableMemory<E> realloc(final int size) {
         final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
-        final BitwiseModifiableMemory<E>[] prev = this.areas;
-        final BitwiseModifiableMemory<E>[] copy = Arrays.copyOf(prev, aligned);
+        final Area<E>[] prev = this.areas;
+        final Area<E>[] copy = Arrays.copyOf(prev, aligned);
         for (int p = prev.length; p < aligned; ++p) {
             copy[p] = this.mapped.apply(1 << p);
         }
@@ -72,45 +74,92 @@ public final class BitwiseSegmentsMemory<E extends Number>
 
     @Override
     public E fetch(final int index) {
-        return this.compute(index, (i, area) -> area.fetch(i));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetch(indexForArea(area, index));
     }
 
     @Override
     public void store(final int index, final E value) {
-        this.compute(index, (i, area) -> {
-            area.store(i, value);
-            return value;
-        });
+        final Area<E> area = this.areas[areaForIndex(index)];
+        area.store(indexForArea(area, index), value);
     }
 
     @Override
     public E compareAndExchange(final int index, final E expected, final E value) {
-        return this.compute(index, (i, area) -> area.compareAndExchange(i, expected, value));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.compareAndExchange(indexForArea(area, index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index, final E expected, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.compareAndStore(indexForArea(area, index), expected, value);
+    }
+
+    @Override
+    public E fetchPlain(final int index) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchPlain(indexForArea(area, index));
+    }
+
+    @Override
+    public E fetchOpaque(final int index) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchOpaque(indexForArea(area, index));
+    }
+
+    @Override
+    public void storePlain(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        area.storePlain(indexForArea(area, index), value);
+    }
+
+    @Override
+    public void storeOpaque(final int index, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        area.storeOpaque(indexForArea(area, index), value);
+    }
+
+    @Override
+    public boolean weakCompareAndStore(final int index, final E expected, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.weakCompareAndStore(indexForArea(area, index), expected, value);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreRelease(final int index, final E expected, final E value) {
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.weakCompareAndStoreRelease(indexForArea(area, index), expected, value);
     }
 
     @Override
     public E fetchAndStore(final int index, final E value) {
-        return this.compute(index, (i, area) -> area.fetchAndStore(i, value));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchAndStore(indexForArea(area, index), value);
     }
 
     @Override
     public E fetchAndAdd(final int index, final E value) {
-        return this.compute(index, (i, area) -> area.fetchAndAdd(i, value));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchAndAdd(indexForArea(area, index), value);
     }
 
     @Override
     public E fetchAndBitwiseOr(final int index, final E mask) {
-        return this.compute(index, (i, area) -> area.fetchAndBitwiseOr(i, mask));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchAndBitwiseOr(indexForArea(area, index), mask);
     }
 
     @Override
     public E fetchAndBitwiseAnd(final int index, final E mask) {
-        return this.compute(index, (i, area) -> area.fetchAndBitwiseAnd(i, mask));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchAndBitwiseAnd(indexForArea(area, index), mask);
     }
 
     @Override
     public E fetchAndBitwiseXor(final int index, final E mask) {
-        return this.compute(index, (i, area) -> area.fetchAndBitwiseXor(i, mask));
+        final Area<E> area = this.areas[areaForIndex(index)];
+        return area.fetchAndBitwiseXor(indexForArea(area, index), mask);
     }
 
     @Override
@@ -118,17 +167,26 @@ public final class BitwiseSegmentsMemory<E extends Number>
         return 1 << this.areas.length;
     }
 
-    private E compute(final int index,
-                      final BiFunction<Integer, BitwiseModifiableMemory<E>, E> consumer) {
-        final int exponent = areaForIndex(index);
-        final BitwiseModifiableMemory<E> area = this.areas[exponent];
-        final int i = this.indexForArea(area, index);
-        return consumer.apply(i, area);
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super E> action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final Area<E> area = this.areas[areaForIndex(index)];
+            final int i = indexForArea(area, index);
+            final int n = Math.min(area.length() - i, to - index);
+            for (int j = i, end = i + n; j < end; ++j, ++index) {
+                action.accept(area.fetch(j), index);
+            }
+        }
     }
+
     @Override
     public String toString() {
         final StringJoiner joiner = new StringJoiner("\n");
-        for (final BitwiseModifiableMemory<E> area : this.areas) {
+        for (final Area<E> area : this.areas) {
             if (area == null) {
                 break;
             }
@@ -158,12 +216,33 @@ public final class BitwiseSegmentsMemory<E extends Number>
         @Override public void store(final int index, final Long value)
         { LONGS.setRelease(this.array, index, value); }
 
+        @Override public Long fetchPlain(final int index)
+        { return (long) LONGS.get(this.array, index); }
+
+        @Override public Long fetchOpaque(final int index)
+        { return (long) LONGS.getOpaque(this.array, index); }
+
+        @Override public void storePlain(final int index, final Long value)
+        { LONGS.set(this.array, index, (long) value); }
+
+        @Override public void storeOpaque(final int index, final Long value)
+        { LONGS.setOpaque(this.array, index, (long) value); }
+
+        @Override public boolean weakCompareAndStore(final int i, final Long expected, final Long value)
+        { return LONGS.weakCompareAndSetPlain(this.array, i, (long) expected, (long) value); }
+
+        @Override public boolean weakCompareAndStoreRelease(final int i, final Long expected, final Long value)
+        { return LONGS.weakCompareAndSetRelease(this.array, i, (long) expected, (long) value); }
+
         @Override public Long fetchAndStore(final int index, final Long value)
         { return (long) LONGS.getAndSet(this.array, index, value); }
 
         @Override public Long compareAndExchange(final int i, final Long expected, final Long value)
         { return (long) LONGS.compareAndExchange(this.array, i, expected, value); }
 
+        @Override public boolean compareAndStore(final int i, final Long expected, final Long value)
+        { return LONGS.compareAndSet(this.array, i, (long) expected, (long) value); }
+
         @Override public Long fetchAndAdd(final int i, final Long value)
         { return (long) LONGS.getAndAdd(this.array, i, value); }
 
@@ -189,12 +268,33 @@ public final class BitwiseSegmentsMemory<E extends Number>
         @Override public void store(final int index, final Integer value)
         { INTEGERS.setRelease(this.array, index, value); }
 
+        @Override public Integer fetchPlain(final int index)
+        { return (int) INTEGERS.get(this.array, index); }
+
+        @Override public Integer fetchOpaque(final int index)
+        { return (int) INTEGERS.getOpaque(this.array, index); }
+
+        @Override public void storePlain(final int index, final Integer value)
+        { INTEGERS.set(this.array, index, (int) value); }
+
+        @Override public void storeOpaque(final int index, final Integer value)
+        { INTEGERS.setOpaque(this.array, index, (int) value); }
+
+        @Override public boolean weakCompareAndStore(final int i, final Integer expected, final Integer value)
+        { return INTEGERS.weakCompareAndSetPlain(this.array, i, (int) expected, (int) value); }
+
+        @Override public boolean weakCompareAndStoreRelease(final int i, final Integer expected, final Integer value)
+        { return INTEGERS.weakCompareAndSetRelease(this.array, i, (int) expected, (int) value); }
+
         @Override public Integer fetchAndStore(final int index, final Integer value)
         { return (int) INTEGERS.getAndSet(this.array, index, value); }
 
         @Override public Integer compareAndExchange(final int i, final Integer expected, final Integer value)
         { return (int) INTEGERS.compareAndExchange(this.array, i, expected, value); }
 
+        @Override public boolean compareAndStore(final int i, final Integer expected, final Integer value)
+        { return INTEGERS.compareAndSet(this.array, i, (int) expected, (int) value); }
+
         @Override public Integer fetchAndAdd(final int i, final Integer value)
         { return (int) INTEGERS.getAndAdd(this.array, i, value); }
 
@@ -220,12 +320,33 @@ public final class BitwiseSegmentsMemory<E extends Number>
         @Override public void store(final int index, final Short value)
         { SHORTS.setRelease(this.array, index, value); }
 
+        @Override public Short fetchPlain(final int index)
+        { return (short) SHORTS.get(this.array, index); }
+
+        @Override public Short fetchOpaque(final int index)
+        { return (short) SHORTS.getOpaque(this.array, index); }
+
+        @Override public void storePlain(final int index, final Short value)
+        { SHORTS.set(this.array, index, (short) value); }
+
+        @Override public void storeOpaque(final int index, final Short value)
+        { SHORTS.setOpaque(this.array, index, (short) value); }
+
+        @Override public boolean weakCompareAndStore(final int i, final Short expected, final Short value)
+        { return SHORTS.weakCompareAndSetPlain(this.array, i, (short) expected, (short) value); }
+
+        @Override public boolean weakCompareAndStoreRelease(final int i, final Short expected, final Short value)
+        { return SHORTS.weakCompareAndSetRelease(this.array, i, (short) expected, (short) value); }
+
         @Override public Short fetchAndStore(final int index, final Short value)
         { return (short) SHORTS.getAndSet(this.array, index, value); }
 
         @Override public Short compareAndExchange(final int i, final Short expected, final Short value)
         { return (short) SHORTS.compareAndExchange(this.array, i, expected, value); }
 
+        @Override public boolean compareAndStore(final int i, final Short expected, final Short value)
+        { return SHORTS.compareAndSet(this.array, i, (short) expected, (short) value); }
+
         @Override public Short fetchAndAdd(final int i, final Short value)
         { return (short) SHORTS.getAndAdd(this.array, i, value); }
 
@@ -251,12 +372,33 @@ public final class BitwiseSegmentsMemory<E extends Number>
         @Override public void store(final int index, final Byte value)
         { BYTES.setRelease(this.array, index, value); }
 
+        @Override public Byte fetchPlain(final int index)
+        { return (byte) BYTES.get(this.array, index); }
+
+        @Override public Byte fetchOpaque(final int index)
+        { return (byte) BYTES.getOpaque(this.array, index); }
+
+        @Override public void storePlain(final int index, final Byte value)
+        { BYTES.set(this.array, index, (byte) value); }
+
+        @Override public void storeOpaque(final int index, final Byte value)
+        { BYTES.setOpaque(this.array, index, (byte) value); }
+
+        @Override public boolean weakCompareAndStore(final int i, final Byte expected, final Byte value)
+        { return BYTES.weakCompareAndSetPlain(this.array, i, (byte) expected, (byte) value); }
+
+        @Override public boolean weakCompareAndStoreRelease(final int i, final Byte expected, final Byte value)
+        { return BYTES.weakCompareAndSetRelease(this.array, i, (byte) expected, (byte) value); }
+
         @Override public Byte fetchAndStore(final int index, final Byte value)
         { return (byte) BYTES.getAndSet(this.array, index, value); }
 
         @Override public Byte compareAndExchange(final int i, final Byte expected, final Byte value)
         { return (byte) BYTES.compareAndExchange(this.array, i, expected, value); }
 
+        @Override public boolean compareAndStore(final int i, final Byte expected, final Byte value)
+        { return BYTES.compareAndSet(this.array, i, (byte) expected, (byte) value); }
+
         @Override public Byte fetchAndAdd(final int i, final Byte value)
         { return (byte) BYTES.getAndAdd(this.array, i, value); }
 
@@ -0,0 +1,97 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// word-wise operations of the bulk bitwise methods, a word that
+// cannot change the target is skipped without an atomic update
+enum BulkBitwise {
+    OR {
+        @Override
+        boolean changes(final long d, final long w) {
+            return (w & ~d) != 0;
+        }
+
+        @Override
+        void update(final LongModifiableMemory dst, final int index, final long w) {
+            dst.fetchAndBitwiseOrLong(index, w);
+        }
+
+        @Override
+        void update(final long[] dst, final int i, final long w) {
+            LONGS.getAndBitwiseOr(dst, i, w);
+        }
+    },
+    AND {
+        @Override
+        boolean changes(final long d, final long w) {
+            return (d & ~w) != 0;
+        }
+
+        @Override
+        void update(final LongModifiableMemory dst, final int index, final long w) {
+            dst.fetchAndBitwiseAndLong(index, w);
+        }
+
+        @Override
+        void update(final long[] dst, final int i, final long w) {
+            LONGS.getAndBitwiseAnd(dst, i, w);
+        }
+    },
+    XOR {
+        @Override
+        boolean changes(final long d, final long w) {
+            return w != 0;
+        }
+
+        @Override
+        void update(final LongModifiableMemory dst, final int index, final long w) {
+            dst.fetchAndBitwiseXorLong(index, w);
+        }
+
+        @Override
+        void update(final long[] dst, final int i, final long w) {
+            LONGS.getAndBitwiseXor(dst, i, w);
+        }
+    },
+    AND_NOT {
+        @Override
+        boolean changes(final long d, final long w) {
+            return (d & w) != 0;
+        }
+
+        @Override
+        void update(final LongModifiableMemory dst, final int index, final long w) {
+            dst.fetchAndBitwiseAndLong(index, ~w);
+        }
+
+        @Override
+        void update(final long[] dst, final int i, final long w) {
+            LONGS.getAndBitwiseAnd(dst, i, ~w);
+        }
+    };
+
+    // whether w can change the target word d
+    abstract boolean changes(long d, long w);
+
+    abstract void update(LongModifiableMemory dst, int index, long w);
+
+    // a word of a raw segment, for memories that keep their words in arrays
+    abstract void update(long[] dst, int i, long w);
+
+    void apply(final LongModifiableMemory dst, final int index, final long w) {
+        if (this.changes(dst.fetchLong(index), w)) {
+            this.update(dst, index, w);
+        }
+    }
+
+    void apply(final long[] dst, final int i, final long w) {
+        if (this.changes((long) LONGS.getAcquire(dst, i), w)) {
+            this.update(dst, i, w);
+        }
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS
+            = MethodHandles.arrayElementVarHandle(long[].class);
+}
@@ -0,0 +1,214 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Flat combining over another memory: {@link #transform(int, UnaryOperator)}
+ * publishes its operator in a preallocated slot and whichever thread holds
+ * the combiner lock applies everything published so far, composing the
+ * operators of one index into a single compare-and-store. Under contention
+ * for a few hot cells this turns many failing CAS loops into one
+ * successful CAS.
+ * <p>
+ * A waiting thread spins for a while and then parks until the combiner
+ * unparks it; if every slot is taken, the operator is applied directly.
+ * The combiner still updates the cells by CAS, so the other operations
+ * go straight to the underlying memory and may be mixed freely with
+ * combined ones.
+ */
+public final class CombiningMemory<E> implements ModifiableMemory<E> {
+    private static final int FREE = 0, CLAIMED = 1, PENDING = 2, BATCHED = 3, DONE = 4;
+    private static final int SPINS = 1 << 8;
+    private final ModifiableMemory<E> memory;
+    private final ReentrantLock combiner = new ReentrantLock();
+    // slot states, the payload below is published by the release of a state
+    private final AtomicIntegerArray states;
+    private final int[] indices;
+    private final UnaryOperator<E>[] operators;
+    private final Thread[] waiters;
+    private final RuntimeException[] failures;
+
+    public CombiningMemory(final ModifiableMemory<E> memory) {
+        this(memory, Runtime.getRuntime().availableProcessors() << 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public CombiningMemory(final ModifiableMemory<E> memory, final int slots) {
+        this.memory = memory;
+        this.states = new AtomicIntegerArray(slots);
+        this.indices = new int[slots];
+        this.operators = new UnaryOperator[slots];
+        this.waiters = new Thread[slots];
+        this.failures = new RuntimeException[slots];
+    }
+
+    @Override
+    public void transform(final int index, final UnaryOperator<E> operator) {
+        final int slot = this.claim();
+        if (slot < 0) {
+            this.memory.transform(index, operator);
+            return;
+        }
+        this.indices[slot] = index;
+        this.operators[slot] = operator;
+        this.waiters[slot] = Thread.currentThread();
+        // a volatile write, so that a combiner unlocking later sees it
+        this.states.set(slot, PENDING);
+        this.await(slot);
+        final RuntimeException failure = this.failures[slot];
+        this.operators[slot] = null;
+        this.waiters[slot] = null;
+        this.failures[slot] = null;
+        this.states.setRelease(slot, FREE);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public CombiningMemory<E> realloc(final int size) {
+        return new CombiningMemory<>(this.memory.realloc(size), this.states.length());
+    }
+
+    @Override
+    public int length() {
+        return this.memory.length();
+    }
+
+    @Override
+    public E fetch(final int index) {
+        return this.memory.fetch(index);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        this.memory.store(index, value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        return this.memory.fetchAndStore(index, value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expected,
+                                final E newValue) {
+        return this.memory.compareAndExchange(index, expected, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expected,
+                                   final E newValue) {
+        return this.memory.compareAndStore(index, expected, newValue);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(String.valueOf(x)));
+        return joiner.toString();
+    }
+
+    // starts from a slot chosen by the thread, -1 if all of them are taken
+    private int claim() {
+        final int n = this.states.length();
+        final int h = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < n; ++i) {
+            final int slot = Math.floorMod(h + i, n);
+            if (this.states.get(slot) == FREE
+                    && this.states.compareAndSet(slot, FREE, CLAIMED)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // a request is either applied by the current combiner or still
+    // pending when it unlocks, and then its waiter is woken up to combine
+    private void await(final int slot) {
+        for (int spins = 0; this.states.getAcquire(slot) != DONE; ) {
+            if (this.combiner.tryLock()) {
+                try {
+                    this.combine();
+                } finally {
+                    this.combiner.unlock();
+                }
+                this.wakePending();
+            } else if (spins < SPINS) {
+                ++spins;
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void wakePending() {
+        for (int j = 0, n = this.states.length(); j < n; ++j) {
+            if (this.states.get(j) == PENDING) {
+                LockSupport.unpark(this.waiters[j]);
+            }
+        }
+    }
+
+    // one pass over the slots, batching the pending requests index by index
+    private void combine() {
+        final AtomicIntegerArray st = this.states;
+        for (int i = 0, n = st.length(); i < n; ++i) {
+            if (st.getAcquire(i) != PENDING) {
+                continue;
+            }
+            final int index = this.indices[i];
+            for (int j = i; j < n; ++j) {
+                if (st.getAcquire(j) == PENDING && this.indices[j] == index) {
+                    st.setPlain(j, BATCHED);
+                }
+            }
+            RuntimeException failure = null;
+            try {
+                for (E current, next; ; ) {
+                    current = next = this.memory.fetch(index);
+                    for (int j = i; j < n; ++j) {
+                        if (st.getPlain(j) == BATCHED) {
+                            next = this.apply(j, next);
+                        }
+                    }
+                    if (this.memory.compareAndStore(index, current, next)) {
+                        break;
+                    }
+                }
+            } catch (final RuntimeException e) {
+                // an index out of bounds fails the whole batch of its index
+                failure = e;
+            }
+            for (int j = i; j < n; ++j) {
+                if (st.getPlain(j) == BATCHED) {
+                    if (failure != null) {
+                        this.failures[j] = failure;
+                    }
+                    final Thread waiter = this.waiters[j];
+                    st.setRelease(j, DONE);
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+    }
+
+    // a failing operator is skipped, the others of the batch still apply
+    private E apply(final int slot, final E value) {
+        try {
+            this.failures[slot] = null;
+            return this.operators[slot].apply(value);
+        } catch (final RuntimeException e) {
+            this.failures[slot] = e;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package sunmisc.utils.concurrent.memory;
+
+/**
+ * Memory of {@code double} cells. Compare-and-exchange compares the raw
+ * bits, as {@link java.lang.invoke.VarHandle} does for {@code double}
+ * arrays, so {@code NaN} matches itself and {@code -0.0} does not
+ * match {@code 0.0}.
+ */
+public interface DoubleModifiableMemory extends ModifiableMemory<Double> {
+
+    double fetchDouble(int index) throws IndexOutOfBoundsException;
+
+    void storeDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double fetchAndStoreDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double compareAndExchangeDouble(int index,
+                                    double expectedValue,
+                                    double newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreDouble(final int index,
+                                          final double expectedValue,
+                                          final double newValue
+    ) throws IndexOutOfBoundsException {
+        return Double.doubleToRawLongBits(this.compareAndExchangeDouble(index,
+                expectedValue,
+                newValue
+        )) == Double.doubleToRawLongBits(expectedValue);
+    }
+
+    double fetchAndAddDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    // the previous value, the cell becomes Math.max of it and value
+    double fetchAndMaxDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    double fetchAndMinDouble(int index, double value) throws IndexOutOfBoundsException;
+
+    @Override
+    DoubleModifiableMemory realloc(int size) throws OutOfMemoryError;
+
+    @Override
+    default Double fetch(final int index) {
+        return this.fetchDouble(index);
+    }
+
+    @Override
+    default void store(final int index, final Double value) {
+        this.storeDouble(index, value);
+    }
+
+    @Override
+    default Double fetchAndStore(final int index, final Double value) {
+        return this.fetchAndStoreDouble(index, value);
+    }
+
+    @Override
+    default Double compareAndExchange(final int index,
+                                      final Double expectedValue,
+                                      final Double newValue) {
+        return this.compareAndExchangeDouble(index, expectedValue, newValue);
+    }
+
+    @Override
+    default boolean compareAndStore(final int index,
+                                    final Double expectedValue,
+                                    final Double newValue) {
+        return this.compareAndStoreDouble(index, expectedValue, newValue);
+    }
+}
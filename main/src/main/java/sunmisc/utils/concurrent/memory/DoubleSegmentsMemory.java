@@ -0,0 +1,109 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+import java.util.function.DoubleBinaryOperator;
+
+import static java.lang.Double.longBitsToDouble;
+import static java.lang.Double.doubleToRawLongBits;
+
+/**
+ * {@code double} cells kept as raw bits in a {@link LongModifiableMemory},
+ * {@link LongSegmentsMemory} by default, so it grows segment by segment
+ * the same way. Arithmetic updates are CAS loops over the bits.
+ */
+public final class DoubleSegmentsMemory implements DoubleModifiableMemory {
+    private final LongModifiableMemory bits;
+
+    public DoubleSegmentsMemory(final int size) {
+        this(new LongSegmentsMemory(size));
+    }
+
+    public DoubleSegmentsMemory(final LongModifiableMemory bits) {
+        this.bits = bits;
+    }
+
+    @Override
+    public DoubleSegmentsMemory realloc(final int size) {
+        return new DoubleSegmentsMemory(this.bits.realloc(size));
+    }
+
+    @Override
+    public int length() {
+        return this.bits.length();
+    }
+
+    @Override
+    public double fetchDouble(final int index) {
+        return longBitsToDouble(this.bits.fetchLong(index));
+    }
+
+    @Override
+    public void storeDouble(final int index, final double value) {
+        this.bits.storeLong(index, doubleToRawLongBits(value));
+    }
+
+    @Override
+    public double fetchAndStoreDouble(final int index, final double value) {
+        return longBitsToDouble(this.bits.fetchAndStoreLong(index, doubleToRawLongBits(value)));
+    }
+
+    @Override
+    public double compareAndExchangeDouble(final int index,
+                                           final double expectedValue,
+                                           final double newValue) {
+        return longBitsToDouble(this.bits.compareAndExchangeLong(
+                index, doubleToRawLongBits(expectedValue), doubleToRawLongBits(newValue)));
+    }
+
+    @Override
+    public boolean compareAndStoreDouble(final int index,
+                                         final double expectedValue,
+                                         final double newValue) {
+        return this.bits.compareAndStoreLong(
+                index, doubleToRawLongBits(expectedValue), doubleToRawLongBits(newValue));
+    }
+
+    @Override
+    public double fetchAndAddDouble(final int index, final double value) {
+        return this.update(index, value, Double::sum);
+    }
+
+    @Override
+    public double fetchAndMaxDouble(final int index, final double value) {
+        return this.update(index, value, Math::max);
+    }
+
+    @Override
+    public double fetchAndMinDouble(final int index, final double value) {
+        return this.update(index, value, Math::min);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Double.toString(this.fetchDouble(i)));
+        }
+        return joiner.toString();
+    }
+
+    // the witness of a failed CAS is the next expected value,
+    // an update that keeps the bits is not written at all
+    private double update(final int index,
+                          final double value,
+                          final DoubleBinaryOperator function) {
+        long prev = this.bits.fetchLong(index);
+        for (;;) {
+            final long next = doubleToRawLongBits(function.applyAsDouble(longBitsToDouble(prev), value));
+            if (next == prev) {
+                return longBitsToDouble(prev);
+            }
+            final long witness = this.bits.compareAndExchangeLong(index, prev, next);
+            if (witness == prev) {
+                return longBitsToDouble(prev);
+            }
+            prev = witness;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package sunmisc.utils.concurrent.memory;
+
+/**
+ * Memory of {@code float} cells. Compare-and-exchange compares the raw
+ * bits, as {@link java.lang.invoke.VarHandle} does for {@code float}
+ * arrays, so {@code NaN} matches itself and {@code -0.0} does not
+ * match {@code 0.0}.
+ */
+public interface FloatModifiableMemory extends ModifiableMemory<Float> {
+
+    float fetchFloat(int index) throws IndexOutOfBoundsException;
+
+    void storeFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float fetchAndStoreFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float compareAndExchangeFloat(int index,
+                                  float expectedValue,
+                                  float newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreFloat(final int index,
+                                         final float expectedValue,
+                                         final float newValue
+    ) throws IndexOutOfBoundsException {
+        return Float.floatToRawIntBits(this.compareAndExchangeFloat(index,
+                expectedValue,
+                newValue
+        )) == Float.floatToRawIntBits(expectedValue);
+    }
+
+    float fetchAndAddFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    // the previous value, the cell becomes Math.max of it and value
+    float fetchAndMaxFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    float fetchAndMinFloat(int index, float value) throws IndexOutOfBoundsException;
+
+    @Override
+    FloatModifiableMemory realloc(int size) throws OutOfMemoryError;
+
+    @Override
+    default Float fetch(final int index) {
+        return this.fetchFloat(index);
+    }
+
+    @Override
+    default void store(final int index, final Float value) {
+        this.storeFloat(index, value);
+    }
+
+    @Override
+    default Float fetchAndStore(final int index, final Float value) {
+        return this.fetchAndStoreFloat(index, value);
+    }
+
+    @Override
+    default Float compareAndExchange(final int index,
+                                     final Float expectedValue,
+                                     final Float newValue) {
+        return this.compareAndExchangeFloat(index, expectedValue, newValue);
+    }
+
+    @Override
+    default boolean compareAndStore(final int index,
+                                    final Float expectedValue,
+                                    final Float newValue) {
+        return this.compareAndStoreFloat(index, expectedValue, newValue);
+    }
+}
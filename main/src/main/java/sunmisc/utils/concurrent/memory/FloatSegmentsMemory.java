@@ -0,0 +1,113 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+
+import static java.lang.Float.intBitsToFloat;
+import static java.lang.Float.floatToRawIntBits;
+
+/**
+ * {@code float} cells kept as raw bits in a {@link IntModifiableMemory},
+ * {@link IntSegmentsMemory} by default, so it grows segment by segment
+ * the same way. Arithmetic updates are CAS loops over the bits.
+ */
+public final class FloatSegmentsMemory implements FloatModifiableMemory {
+    private final IntModifiableMemory bits;
+
+    public FloatSegmentsMemory(final int size) {
+        this(new IntSegmentsMemory(size));
+    }
+
+    public FloatSegmentsMemory(final IntModifiableMemory bits) {
+        this.bits = bits;
+    }
+
+    @Override
+    public FloatSegmentsMemory realloc(final int size) {
+        return new FloatSegmentsMemory(this.bits.realloc(size));
+    }
+
+    @Override
+    public int length() {
+        return this.bits.length();
+    }
+
+    @Override
+    public float fetchFloat(final int index) {
+        return intBitsToFloat(this.bits.fetchInt(index));
+    }
+
+    @Override
+    public void storeFloat(final int index, final float value) {
+        this.bits.storeInt(index, floatToRawIntBits(value));
+    }
+
+    @Override
+    public float fetchAndStoreFloat(final int index, final float value) {
+        return intBitsToFloat(this.bits.fetchAndStoreInt(index, floatToRawIntBits(value)));
+    }
+
+    @Override
+    public float compareAndExchangeFloat(final int index,
+                                         final float expectedValue,
+                                         final float newValue) {
+        return intBitsToFloat(this.bits.compareAndExchangeInt(
+                index, floatToRawIntBits(expectedValue), floatToRawIntBits(newValue)));
+    }
+
+    @Override
+    public boolean compareAndStoreFloat(final int index,
+                                        final float expectedValue,
+                                        final float newValue) {
+        return this.bits.compareAndStoreInt(
+                index, floatToRawIntBits(expectedValue), floatToRawIntBits(newValue));
+    }
+
+    @Override
+    public float fetchAndAddFloat(final int index, final float value) {
+        return this.update(index, value, Float::sum);
+    }
+
+    @Override
+    public float fetchAndMaxFloat(final int index, final float value) {
+        return this.update(index, value, Math::max);
+    }
+
+    @Override
+    public float fetchAndMinFloat(final int index, final float value) {
+        return this.update(index, value, Math::min);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Float.toString(this.fetchFloat(i)));
+        }
+        return joiner.toString();
+    }
+
+    // the witness of a failed CAS is the next expected value,
+    // an update that keeps the bits is not written at all
+    private float update(final int index,
+                         final float value,
+                         final FloatBinaryOperator function) {
+        int prev = this.bits.fetchInt(index);
+        for (;;) {
+            final int next = floatToRawIntBits(function.applyAsFloat(intBitsToFloat(prev), value));
+            if (next == prev) {
+                return intBitsToFloat(prev);
+            }
+            final int witness = this.bits.compareAndExchangeInt(index, prev, next);
+            if (witness == prev) {
+                return intBitsToFloat(prev);
+            }
+            prev = witness;
+        }
+    }
+
+    @FunctionalInterface
+    private interface FloatBinaryOperator {
+        float applyAsFloat(float left, float right);
+    }
+}
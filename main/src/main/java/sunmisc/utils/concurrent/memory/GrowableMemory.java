@@ -0,0 +1,147 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * Segment memory that grows in place: {@link #ensureCapacity(int)}
+ * installs the missing power-of-two segments with a CAS and never
+ * copies or replaces an existing one, so readers are never blocked
+ * and there is no wrapper to swap.
+ */
+public final class GrowableMemory<E> implements ModifiableMemory<E> {
+    private static final int MAX_SEGMENTS = 31;
+    private final AtomicReferenceArray<ModifiableMemory<E>> segments
+            = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final AtomicInteger count = new AtomicInteger();
+
+    public GrowableMemory(final int size) {
+        this.ensureCapacity(size);
+    }
+
+    public void ensureCapacity(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        for (int p = this.count.get(); p < aligned; ++p) {
+            if (this.segments.get(p) == null) {
+                this.segments.compareAndSet(p, null,
+                        new ArrayMemory<>(p == 0 ? 2 : 1 << p));
+            }
+        }
+        // segments are published before the length that covers them
+        this.count.accumulateAndGet(aligned, Math::max);
+    }
+
+    // grows in place and never shrinks, the result is always this
+    @Override
+    public GrowableMemory<E> realloc(final int size) {
+        this.ensureCapacity(size);
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.count.get();
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.fetch(indexForSegment(segment, index));
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.fetchAndStore(indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expected,
+                                final E newValue) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.compareAndExchange(indexForSegment(segment, index), expected, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expected,
+                                   final E newValue) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.compareAndStore(indexForSegment(segment, index), expected, newValue);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        segment.store(indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public E fetchPlain(final int index) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.fetchPlain(indexForSegment(segment, index));
+    }
+
+    @Override
+    public E fetchOpaque(final int index) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.fetchOpaque(indexForSegment(segment, index));
+    }
+
+    @Override
+    public void storePlain(final int index, final E value) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        segment.storePlain(indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public void storeOpaque(final int index, final E value) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        segment.storeOpaque(indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public boolean weakCompareAndStore(final int index,
+                                       final E expected,
+                                       final E newValue) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.weakCompareAndStore(indexForSegment(segment, index), expected, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreRelease(final int index,
+                                              final E expected,
+                                              final E newValue) {
+        final ModifiableMemory<E> segment = this.segmentFor(index);
+        return segment.weakCompareAndStoreRelease(indexForSegment(segment, index), expected, newValue);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(String.valueOf(x)));
+        return joiner.toString();
+    }
+
+    private ModifiableMemory<E> segmentFor(final int index) {
+        final ModifiableMemory<E> segment = this.segments.getAcquire(segmentForIndex(index));
+        if (segment == null) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return segment;
+    }
+
+    // log2
+    private static int segmentForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static int indexForSegment(final ReadableMemory<?> segment, final int index) {
+        return index < 2 ? index : index - segment.length();
+    }
+}
@@ -0,0 +1,252 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+public interface IntModifiableMemory extends BitwiseModifiableMemory<Integer> {
+
+    int fetchInt(int index) throws IndexOutOfBoundsException;
+
+    void storeInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int fetchAndStoreInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int compareAndExchangeInt(int index,
+                              int expectedValue,
+                              int newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreInt(final int index,
+                                       final int expectedValue,
+                                       final int newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchangeInt(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    default int fetchPlainInt(final int index) throws IndexOutOfBoundsException {
+        return this.fetchInt(index);
+    }
+
+    default int fetchOpaqueInt(final int index) throws IndexOutOfBoundsException {
+        return this.fetchInt(index);
+    }
+
+    default void storePlainInt(final int index, final int value) throws IndexOutOfBoundsException {
+        this.storeInt(index, value);
+    }
+
+    default void storeOpaqueInt(final int index, final int value) throws IndexOutOfBoundsException {
+        this.storeInt(index, value);
+    }
+
+    default boolean weakCompareAndStoreInt(final int index,
+                                            final int expectedValue,
+                                            final int newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndStoreInt(index, expectedValue, newValue);
+    }
+
+    default boolean weakCompareAndStoreReleaseInt(final int index,
+                                                   final int expectedValue,
+                                                   final int newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndStoreInt(index, expectedValue, newValue);
+    }
+
+    // retries from the witness of the failed exchange instead of
+    // fetching again, backing off exponentially between attempts
+    default int transformInt(final int index,
+                             final IntUnaryOperator operator
+    ) throws IndexOutOfBoundsException {
+        int current = this.fetchInt(index);
+        for (int spins = 1; ; spins = Math.min(spins << 1, 1 << 10)) {
+            final int next = operator.applyAsInt(current);
+            final int witness = this.compareAndExchangeInt(index, current, next);
+            if (witness == current) {
+                return next;
+            }
+            current = witness;
+            for (int i = 0; i < spins; ++i) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    int fetchAndAddInt(int index, int value) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseOrInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseAndInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    int fetchAndBitwiseXorInt(int index, int mask) throws IndexOutOfBoundsException;
+
+    default void fillInt(final int from,
+                         final int to,
+                         final int value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeInt(i, value);
+        }
+    }
+
+    default void copyTo(final int srcPos,
+                        final int[] dst,
+                        final int dstPos,
+                        final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = this.fetchInt(srcPos + i);
+        }
+    }
+
+    default void copyFrom(final int[] src,
+                          final int srcPos,
+                          final int dstPos,
+                          final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        for (int i = 0; i < length; ++i) {
+            this.storeInt(dstPos + i, src[srcPos + i]);
+        }
+    }
+
+    default void forEachInt(final int from,
+                            final int to,
+                            final IntConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchInt(i));
+        }
+    }
+
+    default IntStream intStream() {
+        return StreamSupport.intStream(
+                new MemorySpliterator.OfInt(this, 0, this.length()),
+                false
+        );
+    }
+
+    @Override
+    IntModifiableMemory realloc(int size) throws OutOfMemoryError;
+
+    @Override
+    default IntModifiableMemory trim(final int occupied, final TrimPolicy policy) {
+        return (IntModifiableMemory) BitwiseModifiableMemory.super.trim(occupied, policy);
+    }
+
+    @Override
+    default Integer fetch(final int index) {
+        return this.fetchInt(index);
+    }
+
+    @Override
+    default void store(final int index, final Integer value) {
+        this.storeInt(index, value);
+    }
+
+    @Override
+    default Integer fetchPlain(final int index) {
+        return this.fetchPlainInt(index);
+    }
+
+    @Override
+    default Integer fetchOpaque(final int index) {
+        return this.fetchOpaqueInt(index);
+    }
+
+    @Override
+    default void storePlain(final int index, final Integer value) {
+        this.storePlainInt(index, value);
+    }
+
+    @Override
+    default void storeOpaque(final int index, final Integer value) {
+        this.storeOpaqueInt(index, value);
+    }
+
+    @Override
+    default boolean weakCompareAndStore(final int index,
+                                        final Integer expectedValue,
+                                        final Integer newValue) {
+        return this.weakCompareAndStoreInt(index, expectedValue, newValue);
+    }
+
+    @Override
+    default boolean weakCompareAndStoreRelease(final int index,
+                                               final Integer expectedValue,
+                                               final Integer newValue) {
+        return this.weakCompareAndStoreReleaseInt(index, expectedValue, newValue);
+    }
+
+    @Override
+    default Integer fetchAndStore(final int index, final Integer value) {
+        return this.fetchAndStoreInt(index, value);
+    }
+
+    @Override
+    default Integer compareAndExchange(final int index,
+                                       final Integer expectedValue,
+                                       final Integer newValue) {
+        return this.compareAndExchangeInt(index, expectedValue, newValue);
+    }
+
+    @Override
+    default boolean compareAndStore(final int index,
+                                    final Integer expectedValue,
+                                    final Integer newValue) {
+        return this.compareAndStoreInt(index, expectedValue, newValue);
+    }
+
+    @Override
+    default Integer fetchAndAdd(final int index, final Integer value) {
+        return this.fetchAndAddInt(index, value);
+    }
+
+    @Override
+    default Integer fetchAndBitwiseOr(final int index, final Integer mask) {
+        return this.fetchAndBitwiseOrInt(index, mask);
+    }
+
+    @Override
+    default Integer fetchAndBitwiseAnd(final int index, final Integer mask) {
+        return this.fetchAndBitwiseAndInt(index, mask);
+    }
+
+    @Override
+    default Integer fetchAndBitwiseXor(final int index, final Integer mask) {
+        return this.fetchAndBitwiseXorInt(index, mask);
+    }
+
+    @Override
+    default void fill(final int from, final int to, final Integer value) {
+        this.fillInt(from, to, value);
+    }
+
+    @Override
+    default void copyTo(final int srcPos,
+                        final ModifiableMemory<? super Integer> dst,
+                        final int dstPos,
+                        final int length) {
+        if (dst instanceof final IntModifiableMemory ints) {
+            Objects.checkFromIndexSize(srcPos, length, this.length());
+            Objects.checkFromIndexSize(dstPos, length, dst.length());
+            for (int i = 0; i < length; ++i) {
+                ints.storeInt(dstPos + i, this.fetchInt(srcPos + i));
+            }
+        } else {
+            BitwiseModifiableMemory.super.copyTo(srcPos, dst, dstPos, length);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+public final class IntSegmentsMemory implements IntModifiableMemory {
+    private final int[][] segments;
+
+    public IntSegmentsMemory(final int size) {
+        this(make(size));
+    }
+
+    private IntSegmentsMemory(final int[][] segments) {
+        this.segments = segments;
+    }
+
+    // O(30), a smaller size keeps the leading segments
+    @Override
+    public IntSegmentsMemory realloc(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final int[][] prev = this.segments;
+        final int[][] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = new int[1 << p];
+        }
+        return new IntSegmentsMemory(copy);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length;
+    }
+
+    @Override
+    public int fetchInt(final int index) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getAcquire(segment, indexForSegment(segment, index));
+    }
+
+    @Override
+    public void storeInt(final int index, final int value) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        INTS.setRelease(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public int fetchAndStoreInt(final int index, final int value) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getAndSet(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public int compareAndExchangeInt(final int index,
+                                     final int expectedValue,
+                                     final int newValue) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.compareAndExchange(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndStoreInt(final int index,
+                                      final int expectedValue,
+                                      final int newValue) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return INTS.compareAndSet(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public int fetchPlainInt(final int index) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.get(segment, indexForSegment(segment, index));
+    }
+
+    @Override
+    public int fetchOpaqueInt(final int index) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getOpaque(segment, indexForSegment(segment, index));
+    }
+
+    @Override
+    public void storePlainInt(final int index, final int value) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        INTS.set(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public void storeOpaqueInt(final int index, final int value) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        INTS.setOpaque(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreInt(final int index,
+                                           final int expectedValue,
+                                           final int newValue) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return INTS.weakCompareAndSetPlain(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreReleaseInt(final int index,
+                                                  final int expectedValue,
+                                                  final int newValue) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return INTS.weakCompareAndSetRelease(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public int fetchAndAddInt(final int index, final int value) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getAndAdd(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public int fetchAndBitwiseOrInt(final int index, final int mask) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getAndBitwiseOr(segment, indexForSegment(segment, index), mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseAndInt(final int index, final int mask) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getAndBitwiseAnd(segment, indexForSegment(segment, index), mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseXorInt(final int index, final int mask) {
+        final int[] segment = this.segments[segmentForIndex(index)];
+        return (int) INTS.getAndBitwiseXor(segment, indexForSegment(segment, index), mask);
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super Integer> action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final int[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            for (int j = i, end = i + n; j < end; ++j, ++index) {
+                action.accept((int) INTS.getAcquire(segment, j), index);
+            }
+        }
+    }
+
+    @Override
+    public void forEachInt(final int from, final int to, final IntConsumer action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final int[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            for (int j = i, end = i + n; j < end; ++j) {
+                action.accept((int) INTS.getAcquire(segment, j));
+            }
+            index += n;
+        }
+    }
+
+    // bulk plain accesses, fences give them acquire/release semantics
+    @Override
+    public void fillInt(final int from, final int to, final int value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        VarHandle.releaseFence();
+        for (int index = from; index < to; ) {
+            final int[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            Arrays.fill(segment, i, i + n, value);
+            index += n;
+        }
+    }
+
+    @Override
+    public void copyFrom(final int[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        VarHandle.releaseFence();
+        for (int done = 0; done < length; ) {
+            final int index = dstPos + done;
+            final int[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, length - done);
+            System.arraycopy(src, srcPos + done, segment, i, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final int[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final int[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, length - done);
+            System.arraycopy(segment, i, dst, dstPos + done, n);
+            done += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final ModifiableMemory<? super Integer> dst,
+                       final int dstPos,
+                       final int length) {
+        if (dst instanceof final IntModifiableMemory ints) {
+            Objects.checkFromIndexSize(srcPos, length, this.length());
+            Objects.checkFromIndexSize(dstPos, length, dst.length());
+            for (int done = 0; done < length; ) {
+                final int index = srcPos + done;
+                final int[] segment = this.segments[segmentForIndex(index)];
+                final int i = indexForSegment(segment, index);
+                final int n = Math.min(segment.length - i, length - done);
+                ints.copyFrom(segment, i, dstPos + done, n);
+                done += n;
+            }
+        } else {
+            IntModifiableMemory.super.copyTo(srcPos, dst, dstPos, length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (final int[] segment : this.segments) {
+            for (final int x : segment) {
+                joiner.add(Integer.toString(x));
+            }
+        }
+        return joiner.toString();
+    }
+
+    // log2
+    private static int segmentForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static int indexForSegment(final int[] segment, final int index) {
+        return index < 2 ? index : index - segment.length;
+    }
+
+    private static int[][] make(final int size) {
+        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final int[][] alloc = new int[segments][];
+        alloc[0] = new int[2];
+        for (int segment = 1; segment < segments; ++segment) {
+            alloc[segment] = new int[1 << segment];
+        }
+        return alloc;
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle INTS
+            = MethodHandles.arrayElementVarHandle(int[].class);
+}
@@ -0,0 +1,42 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.function.UnaryOperator;
+
+public interface LargeModifiableMemory<E> extends LargeReadableMemory<E> {
+
+    E fetchAndStore(long index, E value) throws IndexOutOfBoundsException;
+
+    E compareAndExchange(long index,
+                         E expectedValue,
+                         E newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStore(final long index,
+                                    final E expectedValue,
+                                    final E newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchange(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    default void store(
+            final long index,
+            final E value
+    ) throws IndexOutOfBoundsException {
+        this.fetchAndStore(index, value);
+    }
+
+    LargeModifiableMemory<E> realloc(long size) throws OutOfMemoryError;
+
+    default void transform(final long index,
+                           final UnaryOperator<E> operator
+    ) throws IndexOutOfBoundsException {
+        for (E current; !this.compareAndStore(index,
+                current = this.fetch(index),
+                operator.apply(current)
+             );) {
+        }
+    }
+}
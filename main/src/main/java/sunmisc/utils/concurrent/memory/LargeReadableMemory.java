@@ -0,0 +1,19 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+public interface LargeReadableMemory<E> {
+
+    E fetch(long index) throws IndexOutOfBoundsException;
+
+    long length();
+
+    default void forEach(final Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+
+        for (long index = 0, n = this.length(); index < n; ++index) {
+            action.accept(this.fetch(index));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * Long-indexed counterpart of {@link SegmentsMemory}: segment {@code e}
+ * holds the indices {@code [2^e, 2^(e+1))}. Segments that do not fit
+ * into a single array are split into chunks of {@code 2^30} elements.
+ */
+public final class LargeSegmentsMemory<E> implements LargeModifiableMemory<E> {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final int MAX_SEGMENTS = 61;
+    private final ModifiableMemory<E>[][] segments;
+
+    public LargeSegmentsMemory(final long size) {
+        this(make(size));
+    }
+
+    private LargeSegmentsMemory(final ModifiableMemory<E>[][] segments) {
+        this.segments = segments;
+    }
+
+    // O(61), a smaller size keeps the leading segments
+    @Override
+    public LargeSegmentsMemory<E> realloc(final long size) {
+        final int aligned = segmentsFor(size);
+        final ModifiableMemory<E>[][] prev = this.segments;
+        final ModifiableMemory<E>[][] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = chunks(p);
+        }
+        return new LargeSegmentsMemory<>(copy);
+    }
+
+    @Override
+    public long length() {
+        return 1L << this.segments.length;
+    }
+
+    @Override
+    public E fetch(final long index) {
+        return this.chunkFor(index).fetch(indexForChunk(index));
+    }
+
+    @Override
+    public E fetchAndStore(final long index, final E value) {
+        return this.chunkFor(index).fetchAndStore(indexForChunk(index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final long index,
+                                final E expected,
+                                final E newValue) {
+        return this.chunkFor(index).compareAndExchange(
+                indexForChunk(index), expected, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final long index,
+                                   final E expected,
+                                   final E newValue) {
+        return this.chunkFor(index).compareAndStore(
+                indexForChunk(index), expected, newValue);
+    }
+
+    @Override
+    public void store(final long index, final E value) {
+        this.chunkFor(index).store(indexForChunk(index), value);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("\n");
+        for (final ModifiableMemory<E>[] segment : this.segments) {
+            for (final ModifiableMemory<E> chunk : segment) {
+                builder.append(chunk);
+            }
+        }
+        return builder.toString();
+    }
+
+    private ModifiableMemory<E> chunkFor(final long index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(Long.toString(index));
+        }
+        final ModifiableMemory<E>[] segment = this.segments[segmentForIndex(index)];
+        return segment[(int) (offsetInSegment(index) >>> CHUNK_SHIFT)];
+    }
+
+    // log2
+    private static int segmentForIndex(final long index) {
+        return index < 2 ? 0 : 63 - numberOfLeadingZeros(index);
+    }
+
+    private static long offsetInSegment(final long index) {
+        return index < 2 ? index : index - Long.highestOneBit(index);
+    }
+
+    private static int indexForChunk(final long index) {
+        return (int) (offsetInSegment(index) & CHUNK_MASK);
+    }
+
+    private static int segmentsFor(final long size) {
+        final int segments = 64 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        if (segments > MAX_SEGMENTS) {
+            throw new OutOfMemoryError("Requested size exceeds 2^" + MAX_SEGMENTS);
+        }
+        return segments;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> ModifiableMemory<E>[] chunks(final int segment) {
+        final int count = segment <= CHUNK_SHIFT ? 1 : 1 << (segment - CHUNK_SHIFT);
+        final int length = segment == 0 ? 2 : 1 << Math.min(segment, CHUNK_SHIFT);
+        final ModifiableMemory<E>[] chunks = new ModifiableMemory[count];
+        for (int i = 0; i < count; ++i) {
+            chunks[i] = new ArrayMemory<>(length);
+        }
+        return chunks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> ModifiableMemory<E>[][] make(final long size) {
+        final int segments = segmentsFor(size);
+        final ModifiableMemory<E>[][] alloc = new ModifiableMemory[segments][];
+        for (int segment = 0; segment < segments; ++segment) {
+            alloc[segment] = chunks(segment);
+        }
+        return alloc;
+    }
+}
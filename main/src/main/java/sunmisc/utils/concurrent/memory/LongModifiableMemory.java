@@ -0,0 +1,301 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+public interface LongModifiableMemory extends BitwiseModifiableMemory<Long> {
+
+    long fetchLong(int index) throws IndexOutOfBoundsException;
+
+    void storeLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long fetchAndStoreLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long compareAndExchangeLong(int index,
+                                long expectedValue,
+                                long newValue
+    ) throws IndexOutOfBoundsException;
+
+    default boolean compareAndStoreLong(final int index,
+                                        final long expectedValue,
+                                        final long newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndExchangeLong(index,
+                expectedValue,
+                newValue
+        ) == expectedValue;
+    }
+
+    default long fetchPlainLong(final int index) throws IndexOutOfBoundsException {
+        return this.fetchLong(index);
+    }
+
+    default long fetchOpaqueLong(final int index) throws IndexOutOfBoundsException {
+        return this.fetchLong(index);
+    }
+
+    default void storePlainLong(final int index, final long value) throws IndexOutOfBoundsException {
+        this.storeLong(index, value);
+    }
+
+    default void storeOpaqueLong(final int index, final long value) throws IndexOutOfBoundsException {
+        this.storeLong(index, value);
+    }
+
+    default boolean weakCompareAndStoreLong(final int index,
+                                            final long expectedValue,
+                                            final long newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndStoreLong(index, expectedValue, newValue);
+    }
+
+    default boolean weakCompareAndStoreReleaseLong(final int index,
+                                                   final long expectedValue,
+                                                   final long newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndStoreLong(index, expectedValue, newValue);
+    }
+
+    // retries from the witness of the failed exchange instead of
+    // fetching again, backing off exponentially between attempts
+    default long transformLong(final int index,
+                               final LongUnaryOperator operator
+    ) throws IndexOutOfBoundsException {
+        long current = this.fetchLong(index);
+        for (int spins = 1; ; spins = Math.min(spins << 1, 1 << 10)) {
+            final long next = operator.applyAsLong(current);
+            final long witness = this.compareAndExchangeLong(index, current, next);
+            if (witness == current) {
+                return next;
+            }
+            current = witness;
+            for (int i = 0; i < spins; ++i) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    long fetchAndAddLong(int index, long value) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseOrLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseAndLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    long fetchAndBitwiseXorLong(int index, long mask) throws IndexOutOfBoundsException;
+
+    default void fillLong(final int from,
+                          final int to,
+                          final long value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.storeLong(i, value);
+        }
+    }
+
+    default void copyTo(final int srcPos,
+                        final long[] dst,
+                        final int dstPos,
+                        final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = this.fetchLong(srcPos + i);
+        }
+    }
+
+    default void copyFrom(final long[] src,
+                          final int srcPos,
+                          final int dstPos,
+                          final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        for (int i = 0; i < length; ++i) {
+            this.storeLong(dstPos + i, src[srcPos + i]);
+        }
+    }
+
+    default void forEachLong(final int from,
+                             final int to,
+                             final LongConsumer action
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int i = from; i < to; ++i) {
+            action.accept(this.fetchLong(i));
+        }
+    }
+
+    // bulk word-wise operations with src over the common length,
+    // each word is updated atomically but the whole is not a snapshot
+    default void bitwiseOr(final LongModifiableMemory src) {
+        this.combine(src, BulkBitwise.OR);
+    }
+
+    default void bitwiseAnd(final LongModifiableMemory src) {
+        this.combine(src, BulkBitwise.AND);
+        // words past src are and-ed with zero
+        for (int i = src.length(), n = this.length(); i < n; ++i) {
+            this.storeLong(i, 0L);
+        }
+    }
+
+    default void bitwiseXor(final LongModifiableMemory src) {
+        this.combine(src, BulkBitwise.XOR);
+    }
+
+    default void bitwiseAndNot(final LongModifiableMemory src) {
+        this.combine(src, BulkBitwise.AND_NOT);
+    }
+
+    default long bitCount() {
+        return this.bitCount(0, this.length());
+    }
+
+    default long bitCount(final int from, final int to) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        long count = 0;
+        for (int i = from; i < to; ++i) {
+            count += Long.bitCount(this.fetchLong(i));
+        }
+        return count;
+    }
+
+    default LongStream longStream() {
+        return StreamSupport.longStream(
+                new MemorySpliterator.OfLong(this, 0, this.length()),
+                false
+        );
+    }
+
+    // src is read in chunks through its bulk copy, words that
+    // would not change are skipped without an atomic update
+    private void combine(final LongModifiableMemory src, final BulkBitwise op) {
+        final int n = Math.min(this.length(), src.length());
+        final long[] chunk = new long[Math.min(n, 1 << 10)];
+        for (int from = 0; from < n; from += chunk.length) {
+            final int length = Math.min(chunk.length, n - from);
+            src.copyTo(from, chunk, 0, length);
+            for (int i = 0; i < length; ++i) {
+                op.apply(this, from + i, chunk[i]);
+            }
+        }
+    }
+
+    @Override
+    LongModifiableMemory realloc(int size) throws OutOfMemoryError;
+
+    @Override
+    default LongModifiableMemory trim(final int occupied, final TrimPolicy policy) {
+        return (LongModifiableMemory) BitwiseModifiableMemory.super.trim(occupied, policy);
+    }
+
+    @Override
+    default Long fetch(final int index) {
+        return this.fetchLong(index);
+    }
+
+    @Override
+    default void store(final int index, final Long value) {
+        this.storeLong(index, value);
+    }
+
+    @Override
+    default Long fetchPlain(final int index) {
+        return this.fetchPlainLong(index);
+    }
+
+    @Override
+    default Long fetchOpaque(final int index) {
+        return this.fetchOpaqueLong(index);
+    }
+
+    @Override
+    default void storePlain(final int index, final Long value) {
+        this.storePlainLong(index, value);
+    }
+
+    @Override
+    default void storeOpaque(final int index, final Long value) {
+        this.storeOpaqueLong(index, value);
+    }
+
+    @Override
+    default boolean weakCompareAndStore(final int index,
+                                        final Long expectedValue,
+                                        final Long newValue) {
+        return this.weakCompareAndStoreLong(index, expectedValue, newValue);
+    }
+
+    @Override
+    default boolean weakCompareAndStoreRelease(final int index,
+                                               final Long expectedValue,
+                                               final Long newValue) {
+        return this.weakCompareAndStoreReleaseLong(index, expectedValue, newValue);
+    }
+
+    @Override
+    default Long fetchAndStore(final int index, final Long value) {
+        return this.fetchAndStoreLong(index, value);
+    }
+
+    @Override
+    default Long compareAndExchange(final int index,
+                                    final Long expectedValue,
+                                    final Long newValue) {
+        return this.compareAndExchangeLong(index, expectedValue, newValue);
+    }
+
+    @Override
+    default boolean compareAndStore(final int index,
+                                    final Long expectedValue,
+                                    final Long newValue) {
+        return this.compareAndStoreLong(index, expectedValue, newValue);
+    }
+
+    @Override
+    default Long fetchAndAdd(final int index, final Long value) {
+        return this.fetchAndAddLong(index, value);
+    }
+
+    @Override
+    default Long fetchAndBitwiseOr(final int index, final Long mask) {
+        return this.fetchAndBitwiseOrLong(index, mask);
+    }
+
+    @Override
+    default Long fetchAndBitwiseAnd(final int index, final Long mask) {
+        return this.fetchAndBitwiseAndLong(index, mask);
+    }
+
+    @Override
+    default Long fetchAndBitwiseXor(final int index, final Long mask) {
+        return this.fetchAndBitwiseXorLong(index, mask);
+    }
+
+    @Override
+    default void fill(final int from, final int to, final Long value) {
+        this.fillLong(from, to, value);
+    }
+
+    @Override
+    default void copyTo(final int srcPos,
+                        final ModifiableMemory<? super Long> dst,
+                        final int dstPos,
+                        final int length) {
+        if (dst instanceof final LongModifiableMemory longs) {
+            Objects.checkFromIndexSize(srcPos, length, this.length());
+            Objects.checkFromIndexSize(dstPos, length, dst.length());
+            for (int i = 0; i < length; ++i) {
+                longs.storeLong(dstPos + i, this.fetchLong(srcPos + i));
+            }
+        } else {
+            BitwiseModifiableMemory.super.copyTo(srcPos, dst, dstPos, length);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+public final class LongSegmentsMemory implements LongModifiableMemory {
+    private final long[][] segments;
+
+    public LongSegmentsMemory(final int size) {
+        this(make(size));
+    }
+
+    private LongSegmentsMemory(final long[][] segments) {
+        this.segments = segments;
+    }
+
+    // O(30), a smaller size keeps the leading segments
+    @Override
+    public LongSegmentsMemory realloc(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final long[][] prev = this.segments;
+        final long[][] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = new long[1 << p];
+        }
+        return new LongSegmentsMemory(copy);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length;
+    }
+
+    @Override
+    public long fetchLong(final int index) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAcquire(segment, indexForSegment(segment, index));
+    }
+
+    @Override
+    public void storeLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        LONGS.setRelease(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndSet(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(final int index,
+                                       final long expectedValue,
+                                       final long newValue) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.compareAndExchange(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(final int index,
+                                       final long expectedValue,
+                                       final long newValue) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return LONGS.compareAndSet(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public long fetchPlainLong(final int index) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.get(segment, indexForSegment(segment, index));
+    }
+
+    @Override
+    public long fetchOpaqueLong(final int index) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getOpaque(segment, indexForSegment(segment, index));
+    }
+
+    @Override
+    public void storePlainLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        LONGS.set(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public void storeOpaqueLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        LONGS.setOpaque(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreLong(final int index,
+                                           final long expectedValue,
+                                           final long newValue) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return LONGS.weakCompareAndSetPlain(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreReleaseLong(final int index,
+                                                  final long expectedValue,
+                                                  final long newValue) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return LONGS.weakCompareAndSetRelease(
+                segment, indexForSegment(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public long fetchAndAddLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndAdd(segment, indexForSegment(segment, index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(final int index, final long mask) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndBitwiseOr(segment, indexForSegment(segment, index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(final int index, final long mask) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndBitwiseAnd(segment, indexForSegment(segment, index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(final int index, final long mask) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndBitwiseXor(segment, indexForSegment(segment, index), mask);
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super Long> action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final long[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            for (int j = i, end = i + n; j < end; ++j, ++index) {
+                action.accept((long) LONGS.getAcquire(segment, j), index);
+            }
+        }
+    }
+
+    @Override
+    public void forEachLong(final int from, final int to, final LongConsumer action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final long[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            for (int j = i, end = i + n; j < end; ++j) {
+                action.accept((long) LONGS.getAcquire(segment, j));
+            }
+            index += n;
+        }
+    }
+
+    // both memories share the segment layout, so segments are combined
+    // pairwise without index math; the target word is read first to
+    // skip updates that would not change it
+    @Override
+    public void bitwiseOr(final LongModifiableMemory src) {
+        if (!this.combine(src, BulkBitwise.OR)) {
+            LongModifiableMemory.super.bitwiseOr(src);
+        }
+    }
+
+    @Override
+    public void bitwiseAnd(final LongModifiableMemory src) {
+        if (this.combine(src, BulkBitwise.AND)) {
+            for (int i = src.length(), n = this.length(); i < n; ++i) {
+                this.storeLong(i, 0L);
+            }
+        } else {
+            LongModifiableMemory.super.bitwiseAnd(src);
+        }
+    }
+
+    @Override
+    public void bitwiseXor(final LongModifiableMemory src) {
+        if (!this.combine(src, BulkBitwise.XOR)) {
+            LongModifiableMemory.super.bitwiseXor(src);
+        }
+    }
+
+    @Override
+    public void bitwiseAndNot(final LongModifiableMemory src) {
+        if (!this.combine(src, BulkBitwise.AND_NOT)) {
+            LongModifiableMemory.super.bitwiseAndNot(src);
+        }
+    }
+
+    // a plain counted loop over each segment, which C2 unrolls
+    // and vectorizes where the hardware has a vector popcount
+    @Override
+    public long bitCount(final int from, final int to) {
+        Objects.checkFromToIndex(from, to, this.length());
+        long count = 0;
+        for (int index = from; index < to; ) {
+            final long[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            for (int j = i, end = i + n; j < end; ++j) {
+                count += Long.bitCount(segment[j]);
+            }
+            index += n;
+        }
+        VarHandle.acquireFence();
+        return count;
+    }
+
+    // bulk plain accesses, fences give them acquire/release semantics
+    @Override
+    public void fillLong(final int from, final int to, final long value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        VarHandle.releaseFence();
+        for (int index = from; index < to; ) {
+            final long[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, to - index);
+            Arrays.fill(segment, i, i + n, value);
+            index += n;
+        }
+    }
+
+    @Override
+    public void copyFrom(final long[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        VarHandle.releaseFence();
+        for (int done = 0; done < length; ) {
+            final int index = dstPos + done;
+            final long[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, length - done);
+            System.arraycopy(src, srcPos + done, segment, i, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final long[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final long[] segment = this.segments[segmentForIndex(index)];
+            final int i = indexForSegment(segment, index);
+            final int n = Math.min(segment.length - i, length - done);
+            System.arraycopy(segment, i, dst, dstPos + done, n);
+            done += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final ModifiableMemory<? super Long> dst,
+                       final int dstPos,
+                       final int length) {
+        if (dst instanceof final LongModifiableMemory longs) {
+            Objects.checkFromIndexSize(srcPos, length, this.length());
+            Objects.checkFromIndexSize(dstPos, length, dst.length());
+            for (int done = 0; done < length; ) {
+                final int index = srcPos + done;
+                final long[] segment = this.segments[segmentForIndex(index)];
+                final int i = indexForSegment(segment, index);
+                final int n = Math.min(segment.length - i, length - done);
+                longs.copyFrom(segment, i, dstPos + done, n);
+                done += n;
+            }
+        } else {
+            LongModifiableMemory.super.copyTo(srcPos, dst, dstPos, length);
+        }
+    }
+
+    private boolean combine(final LongModifiableMemory src, final BulkBitwise op) {
+        if (!(src instanceof final LongSegmentsMemory other)) {
+            return false;
+        }
+        final long[][] segments = this.segments;
+        final long[][] sources = other.segments;
+        for (int k = 0, n = Math.min(segments.length, sources.length); k < n; ++k) {
+            final long[] segment = segments[k];
+            final long[] source = sources[k];
+            for (int i = 0; i < segment.length; ++i) {
+                op.apply(segment, i, (long) LONGS.getAcquire(source, i));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (final long[] segment : this.segments) {
+            for (final long x : segment) {
+                joiner.add(Long.toString(x));
+            }
+        }
+        return joiner.toString();
+    }
+
+    // log2
+    private static int segmentForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static int indexForSegment(final long[] segment, final int index) {
+        return index < 2 ? index : index - segment.length;
+    }
+
+    private static long[][] make(final int size) {
+        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final long[][] alloc = new long[segments][];
+        alloc[0] = new long[2];
+        for (int segment = 1; segment < segments; ++segment) {
+            alloc[segment] = new long[1 << segment];
+        }
+        return alloc;
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS
+            = MethodHandles.arrayElementVarHandle(long[].class);
+}
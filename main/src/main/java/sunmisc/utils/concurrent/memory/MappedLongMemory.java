@@ -0,0 +1,240 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * {@link NativeLongMemory} whose segments are mapped from a file, so the
+ * cells survive a restart: cell {@code i} lives at byte {@code 8 * i} of
+ * the file and opening an existing file picks up its content as is.
+ * <p>
+ * {@link #realloc(int)} maps the new segments past the end of the file,
+ * which grows it. Stores reach the page cache immediately, {@link #force()}
+ * writes them through to the storage device. All segments share one
+ * {@link Arena} and one channel, closing any memory obtained through
+ * realloc unmaps all of them.
+ */
+public final class MappedLongMemory
+        implements LongModifiableMemory, AutoCloseable {
+    private static final int SHIFT = 3;
+    private final FileChannel channel;
+    private final Arena arena;
+    private final MemorySegment[] segments;
+
+    // the memory covers at least the existing file
+    public MappedLongMemory(final Path path, final int size) throws IOException {
+        this(FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE), size);
+    }
+
+    private MappedLongMemory(final FileChannel channel, final int size) throws IOException {
+        this(channel, Arena.ofShared(), (int) Math.min(
+                Math.max(channel.size() >> SHIFT, size), 1 << 30));
+    }
+
+    private MappedLongMemory(final FileChannel channel,
+                             final Arena arena,
+                             final int size) {
+        this(channel, arena, make(channel, arena, size));
+    }
+
+    private MappedLongMemory(final FileChannel channel,
+                             final Arena arena,
+                             final MemorySegment[] segments) {
+        this.channel = channel;
+        this.arena = arena;
+        this.segments = segments;
+    }
+
+    @Override
+    public MappedLongMemory realloc(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] prev = this.segments;
+        final MemorySegment[] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = map(this.channel, this.arena, p);
+        }
+        return new MappedLongMemory(this.channel, this.arena, copy);
+    }
+
+    public void force() {
+        for (final MemorySegment segment : this.segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length;
+    }
+
+    @Override
+    public long fetchLong(final int index) {
+        return (long) LONGS.getAcquire(this.segmentFor(index), offset(index));
+    }
+
+    @Override
+    public void storeLong(final int index, final long value) {
+        LONGS.setRelease(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(final int index, final long value) {
+        return (long) LONGS.getAndSet(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(final int index, final long expected, final long value) {
+        return (long) LONGS.compareAndExchange(this.segmentFor(index), offset(index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(final int index, final long expected, final long value) {
+        return LONGS.compareAndSet(this.segmentFor(index), offset(index), expected, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(final int index, final long value) {
+        return (long) LONGS.getAndAdd(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(final int index, final long mask) {
+        return (long) LONGS.getAndBitwiseOr(this.segmentFor(index), offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(final int index, final long mask) {
+        return (long) LONGS.getAndBitwiseAnd(this.segmentFor(index), offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(final int index, final long mask) {
+        return (long) LONGS.getAndBitwiseXor(this.segmentFor(index), offset(index), mask);
+    }
+
+    // bulk plain accesses, fences give them acquire/release semantics
+    @Override
+    public void fillLong(final int from, final int to, final long value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        VarHandle.releaseFence();
+        for (int index = from; index < to; ) {
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, to - index);
+            if (value == 0 || value == -1) {
+                segment.asSlice(offset, (long) n << SHIFT).fill((byte) value);
+            } else {
+                final long first = offset >> SHIFT;
+                for (long i = first; i < first + n; ++i) {
+                    segment.setAtIndex(JAVA_LONG, i, value);
+                }
+            }
+            index += n;
+        }
+    }
+
+    @Override
+    public void copyFrom(final long[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        VarHandle.releaseFence();
+        for (int done = 0; done < length; ) {
+            final int index = dstPos + done;
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, length - done);
+            MemorySegment.copy(src, srcPos + done, segment, JAVA_LONG, offset, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final long[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, length - done);
+            MemorySegment.copy(segment, JAVA_LONG, offset, dst, dstPos + done, n);
+            done += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (this.channel) {
+            this.arena.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Long.toString(this.fetchLong(i)));
+        }
+        return joiner.toString();
+    }
+
+    private MemorySegment segmentFor(final int index) {
+        return this.segments[index < 2 ? 0 : 31 - numberOfLeadingZeros(index)];
+    }
+
+    // byte offset inside the segment, the top bit is the segment itself
+    private static long offset(final int index) {
+        return (long) (index < 2 ? index : index - Integer.highestOneBit(index)) << SHIFT;
+    }
+
+    // segment e holds the cells [2^e, 2^(e+1)), exactly as in the file
+    private static MemorySegment map(final FileChannel channel,
+                                     final Arena arena,
+                                     final int segment) {
+        final long from = segment == 0 ? 0 : 1L << segment;
+        final long length = segment == 0 ? 2 : 1L << segment;
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE,
+                    from << SHIFT, length << SHIFT, arena);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MemorySegment[] make(final FileChannel channel,
+                                        final Arena arena,
+                                        final int size) {
+        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] alloc = new MemorySegment[segments];
+        for (int segment = 0; segment < segments; ++segment) {
+            alloc[segment] = map(channel, arena, segment);
+        }
+        return alloc;
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS = JAVA_LONG.varHandle();
+}
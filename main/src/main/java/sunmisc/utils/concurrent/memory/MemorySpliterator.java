@@ -0,0 +1,193 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Splits on the power-of-two boundaries shared by every segmented
+ * memory, so each half is served by whole segments, and traverses
+ * through {@link ReadableMemory#forEachIndexed(int, int, java.util.function.ObjIntConsumer)}
+ * or its primitive counterparts.
+ */
+final class MemorySpliterator<E> implements Spliterator<E> {
+    private final ReadableMemory<E> memory;
+    private final int fence;
+    private int index;
+
+    MemorySpliterator(final ReadableMemory<E> memory,
+                      final int origin,
+                      final int fence) {
+        this.memory = memory;
+        this.index = origin;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int i = this.index;
+        if (i < this.fence) {
+            this.index = i + 1;
+            action.accept(this.memory.fetch(i));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int lo = this.index, hi = this.fence;
+        if (lo < hi) {
+            this.index = hi;
+            this.memory.forEachIndexed(lo, hi, (element, i) -> action.accept(element));
+        }
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        final int lo = this.index, hi = this.fence;
+        final int mid = split(lo, hi);
+        if (mid < 0) {
+            return null;
+        }
+        this.index = mid;
+        return new MemorySpliterator<>(this.memory, lo, mid);
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.fence - this.index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED;
+    }
+
+    // the start of the last segment in range, or the middle of a single one
+    static int split(final int lo, final int hi) {
+        if (hi - lo < 2) {
+            return -1;
+        }
+        final int top = Integer.highestOneBit(hi - 1);
+        return top > lo ? top : (lo + hi) >>> 1;
+    }
+
+    static final class OfLong implements Spliterator.OfLong {
+        private final LongModifiableMemory memory;
+        private final int fence;
+        private int index;
+
+        OfLong(final LongModifiableMemory memory,
+                final int origin,
+                final int fence) {
+            this.memory = memory;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(final LongConsumer action) {
+            Objects.requireNonNull(action);
+            final int i = this.index;
+            if (i < this.fence) {
+                this.index = i + 1;
+                action.accept(this.memory.fetchLong(i));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final LongConsumer action) {
+            Objects.requireNonNull(action);
+            final int lo = this.index, hi = this.fence;
+            if (lo < hi) {
+                this.index = hi;
+                this.memory.forEachLong(lo, hi, action);
+            }
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            final int lo = this.index, hi = this.fence;
+            final int mid = split(lo, hi);
+            if (mid < 0) {
+                return null;
+            }
+            this.index = mid;
+            return new MemorySpliterator.OfLong(this.memory, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.fence - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    static final class OfInt implements Spliterator.OfInt {
+        private final IntModifiableMemory memory;
+        private final int fence;
+        private int index;
+
+        OfInt(final IntModifiableMemory memory,
+               final int origin,
+               final int fence) {
+            this.memory = memory;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(final IntConsumer action) {
+            Objects.requireNonNull(action);
+            final int i = this.index;
+            if (i < this.fence) {
+                this.index = i + 1;
+                action.accept(this.memory.fetchInt(i));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final IntConsumer action) {
+            Objects.requireNonNull(action);
+            final int lo = this.index, hi = this.fence;
+            if (lo < hi) {
+                this.index = hi;
+                this.memory.forEachInt(lo, hi, action);
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            final int lo = this.index, hi = this.fence;
+            final int mid = split(lo, hi);
+            if (mid < 0) {
+                return null;
+            }
+            this.index = mid;
+            return new MemorySpliterator.OfInt(this.memory, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.fence - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package sunmisc.utils.concurrent.memory;
 
+import java.util.Objects;
 import java.util.function.UnaryOperator;
 
 public interface ModifiableMemory<E> extends ReadableMemory<E> {
@@ -28,15 +29,92 @@ public interface ModifiableMemory<E> extends ReadableMemory<E> {
         this.fetchAndStore(index, value);
     }
 
+    // relaxed writes, by default as strong as store
+    default void storePlain(
+            final int index,
+            final E value
+    ) throws IndexOutOfBoundsException {
+        this.store(index, value);
+    }
+
+    default void storeOpaque(
+            final int index,
+            final E value
+    ) throws IndexOutOfBoundsException {
+        this.store(index, value);
+    }
+
+    // may fail spuriously and orders nothing, callers retry in a loop
+    default boolean weakCompareAndStore(final int index,
+                                        final E expectedValue,
+                                        final E newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndStore(index, expectedValue, newValue);
+    }
+
+    // may fail spuriously, a success has release semantics
+    default boolean weakCompareAndStoreRelease(final int index,
+                                               final E expectedValue,
+                                               final E newValue
+    ) throws IndexOutOfBoundsException {
+        return this.compareAndStore(index, expectedValue, newValue);
+    }
+
+    default void fill(final int from,
+                      final int to,
+                      final E value
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int i = from; i < to; ++i) {
+            this.store(i, value);
+        }
+    }
+
+    default void copyFrom(final E[] src,
+                          final int srcPos,
+                          final int dstPos,
+                          final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        for (int i = 0; i < length; ++i) {
+            this.store(dstPos + i, src[srcPos + i]);
+        }
+    }
+
+    // a smaller size keeps the leading cells and releases the rest,
+    // the memory it is called on is left as it was
     ModifiableMemory<E> realloc(int size) throws OutOfMemoryError;
 
+    // occupied is the number of leading cells still in use
+    default ModifiableMemory<E> trim(final int occupied, final TrimPolicy policy) {
+        final int length = this.length();
+        final int size = Math.max(policy.sizeFor(length, occupied), occupied);
+        return size < length ? this.realloc(size) : this;
+    }
+
+    // a failed store backs off exponentially before it retries,
+    // so threads contending for one cell spread out
     default void transform(final int index,
                            final UnaryOperator<E> operator
     ) throws IndexOutOfBoundsException {
-        for (E current; !this.compareAndStore(index,
-                current = this.fetch(index),
-                operator.apply(current)
-             );) {
+        for (int spins = 1; ; spins = Math.min(spins << 1, 1 << 10)) {
+            final E current = this.fetch(index);
+            if (this.compareAndStore(index, current, operator.apply(current))) {
+                return;
+            }
+            for (int i = 0; i < spins; ++i) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    // each index is transformed atomically, the batch as a whole is not
+    default void transformAll(final int[] indices,
+                              final UnaryOperator<E> operator
+    ) throws IndexOutOfBoundsException {
+        for (final int index : indices) {
+            this.transform(index, operator);
         }
     }
 }
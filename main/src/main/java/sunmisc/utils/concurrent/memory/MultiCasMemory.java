@@ -0,0 +1,188 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory with a lock-free compare-and-store over several cells at once,
+ * after Harris, Fraser and Pratt: the operation installs a descriptor
+ * into its cells in index order, each through a restricted double-compare
+ * single-swap that succeeds only while the operation is undecided, then
+ * decides and replaces the descriptors with the new or the old values.
+ * <p>
+ * Every other operation finding a descriptor in a cell helps the
+ * operation to finish before it goes on, so no thread ever waits for
+ * another one. Values are compared by reference, as in {@link ArrayMemory}.
+ */
+public final class MultiCasMemory<E> implements ModifiableMemory<E> {
+    private static final int UNDECIDED = 0, SUCCEEDED = 1, FAILED = 2;
+    private final ModifiableMemory<Object> cells;
+
+    public MultiCasMemory(final int size) {
+        this(new SegmentsMemory<>(size));
+    }
+
+    public MultiCasMemory(final ModifiableMemory<Object> cells) {
+        this.cells = cells;
+    }
+
+    public boolean compareAndStoreAll(final int[] indices,
+                                      final E[] expected,
+                                      final E[] newValues) {
+        if (indices.length != expected.length || indices.length != newValues.length) {
+            throw new IllegalArgumentException("Lengths of indices and values differ");
+        }
+        final Entry[] entries = new Entry[indices.length];
+        for (int i = 0; i < entries.length; ++i) {
+            entries[i] = new Entry(indices[i], expected[i], newValues[i]);
+        }
+        // a global order keeps helping operations from going in circles
+        Arrays.sort(entries, Comparator.comparingInt(Entry::index));
+        for (int i = 1; i < entries.length; ++i) {
+            if (entries[i - 1].index() == entries[i].index()) {
+                throw new IllegalArgumentException("Duplicate index " + entries[i].index());
+            }
+        }
+        return this.multiCas(new MultiCas(entries));
+    }
+
+    @Override
+    public MultiCasMemory<E> realloc(final int size) {
+        return new MultiCasMemory<>(this.cells.realloc(size));
+    }
+
+    @Override
+    public int length() {
+        return this.cells.length();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E fetch(final int index) {
+        return (E) this.read(index);
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        this.fetchAndStore(index, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E fetchAndStore(final int index, final E value) {
+        for (;;) {
+            final Object current = this.read(index);
+            final Object witness = this.cells.compareAndExchange(index, current, value);
+            if (witness == current) {
+                return (E) current;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E compareAndExchange(final int index,
+                                final E expected,
+                                final E newValue) {
+        for (;;) {
+            final Object witness = this.cells.compareAndExchange(index, expected, newValue);
+            if (!this.help(witness)) {
+                return (E) witness;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(String.valueOf(x)));
+        return joiner.toString();
+    }
+
+    private Object read(final int index) {
+        for (;;) {
+            final Object value = this.cells.fetch(index);
+            if (!this.help(value)) {
+                return value;
+            }
+        }
+    }
+
+    // true if the value was a descriptor, which is finished by now
+    private boolean help(final Object value) {
+        if (value instanceof final Rdcss rdcss) {
+            this.complete(rdcss);
+            return true;
+        } else if (value instanceof final MultiCas mcas) {
+            this.multiCas(mcas);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean multiCas(final MultiCas mcas) {
+        if (mcas.status.get() == UNDECIDED) {
+            int status = SUCCEEDED;
+            for (int i = 0; i < mcas.entries.length && status == SUCCEEDED; ) {
+                final Entry entry = mcas.entries[i];
+                final Object value = this.rdcss(new Rdcss(mcas, entry));
+                if (value instanceof final MultiCas other && other != mcas) {
+                    this.multiCas(other);
+                } else {
+                    if (value != mcas && value != entry.expected()) {
+                        status = FAILED;
+                    }
+                    ++i;
+                }
+            }
+            mcas.status.compareAndSet(UNDECIDED, status);
+        }
+        final boolean succeeded = mcas.status.get() == SUCCEEDED;
+        for (final Entry entry : mcas.entries) {
+            this.cells.compareAndStore(entry.index(), mcas,
+                    succeeded ? entry.value() : entry.expected());
+        }
+        return succeeded;
+    }
+
+    // installs the operation into one cell, but only while it is undecided
+    private Object rdcss(final Rdcss rdcss) {
+        final Entry entry = rdcss.entry();
+        for (;;) {
+            final Object witness = this.cells.compareAndExchange(
+                    entry.index(), entry.expected(), rdcss);
+            if (witness instanceof final Rdcss other) {
+                this.complete(other);
+            } else {
+                if (witness == entry.expected()) {
+                    this.complete(rdcss);
+                }
+                return witness;
+            }
+        }
+    }
+
+    private void complete(final Rdcss rdcss) {
+        final Entry entry = rdcss.entry();
+        this.cells.compareAndStore(entry.index(), rdcss,
+                rdcss.owner().status.get() == UNDECIDED
+                        ? rdcss.owner()
+                        : entry.expected());
+    }
+
+    private record Entry(int index, Object expected, Object value) { }
+
+    private record Rdcss(MultiCas owner, Entry entry) { }
+
+    private static final class MultiCas {
+        private final Entry[] entries;
+        private final AtomicInteger status = new AtomicInteger(UNDECIDED);
+
+        private MultiCas(final Entry[] entries) {
+            this.entries = entries;
+        }
+    }
+}
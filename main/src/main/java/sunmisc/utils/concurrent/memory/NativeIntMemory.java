@@ -0,0 +1,194 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Off-heap memory of {@code int} cells, with the same arena
+ * ownership and close semantics as {@link NativeLongMemory}.
+ */
+public final class NativeIntMemory
+        implements IntModifiableMemory, AutoCloseable {
+    private static final int SHIFT = 2;
+    private final Arena arena;
+    private final MemorySegment[] segments;
+
+    public NativeIntMemory(final int size) {
+        this(Arena.ofShared(), size);
+    }
+
+    private NativeIntMemory(final Arena arena, final int size) {
+        this(arena, make(arena, size));
+    }
+
+    private NativeIntMemory(final Arena arena, final MemorySegment[] segments) {
+        this.arena = arena;
+        this.segments = segments;
+    }
+
+    @Override
+    public NativeIntMemory realloc(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] prev = this.segments;
+        final MemorySegment[] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = allocate(this.arena, 1 << p);
+        }
+        return new NativeIntMemory(this.arena, copy);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length;
+    }
+
+    @Override
+    public int fetchInt(final int index) {
+        return (int) INTS.getAcquire(this.segmentFor(index), offset(index));
+    }
+
+    @Override
+    public void storeInt(final int index, final int value) {
+        INTS.setRelease(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public int fetchAndStoreInt(final int index, final int value) {
+        return (int) INTS.getAndSet(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public int compareAndExchangeInt(final int index, final int expected, final int value) {
+        return (int) INTS.compareAndExchange(this.segmentFor(index), offset(index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreInt(final int index, final int expected, final int value) {
+        return INTS.compareAndSet(this.segmentFor(index), offset(index), expected, value);
+    }
+
+    @Override
+    public int fetchAndAddInt(final int index, final int value) {
+        return (int) INTS.getAndAdd(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public int fetchAndBitwiseOrInt(final int index, final int mask) {
+        return (int) INTS.getAndBitwiseOr(this.segmentFor(index), offset(index), mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseAndInt(final int index, final int mask) {
+        return (int) INTS.getAndBitwiseAnd(this.segmentFor(index), offset(index), mask);
+    }
+
+    @Override
+    public int fetchAndBitwiseXorInt(final int index, final int mask) {
+        return (int) INTS.getAndBitwiseXor(this.segmentFor(index), offset(index), mask);
+    }
+
+    // bulk plain accesses, fences give them acquire/release semantics
+    @Override
+    public void fillInt(final int from, final int to, final int value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        VarHandle.releaseFence();
+        for (int index = from; index < to; ) {
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, to - index);
+            if (value == 0 || value == -1) {
+                segment.asSlice(offset, (long) n << SHIFT).fill((byte) value);
+            } else {
+                final long first = offset >> SHIFT;
+                for (long i = first; i < first + n; ++i) {
+                    segment.setAtIndex(JAVA_INT, i, value);
+                }
+            }
+            index += n;
+        }
+    }
+
+    @Override
+    public void copyFrom(final int[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        VarHandle.releaseFence();
+        for (int done = 0; done < length; ) {
+            final int index = dstPos + done;
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, length - done);
+            MemorySegment.copy(src, srcPos + done, segment, JAVA_INT, offset, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final int[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, length - done);
+            MemorySegment.copy(segment, JAVA_INT, offset, dst, dstPos + done, n);
+            done += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void close() {
+        this.arena.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Integer.toString(this.fetchInt(i)));
+        }
+        return joiner.toString();
+    }
+
+    private MemorySegment segmentFor(final int index) {
+        return this.segments[index < 2 ? 0 : 31 - numberOfLeadingZeros(index)];
+    }
+
+    // byte offset inside the segment, the top bit is the segment itself
+    private static long offset(final int index) {
+        return (long) (index < 2 ? index : index - Integer.highestOneBit(index)) << SHIFT;
+    }
+
+    private static MemorySegment allocate(final Arena arena, final int length) {
+        return arena.allocate((long) length << SHIFT, JAVA_INT.byteAlignment());
+    }
+
+    private static MemorySegment[] make(final Arena arena, final int size) {
+        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] alloc = new MemorySegment[segments];
+        alloc[0] = allocate(arena, 2);
+        for (int segment = 1; segment < segments; ++segment) {
+            alloc[segment] = allocate(arena, 1 << segment);
+        }
+        return alloc;
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle INTS = JAVA_INT.varHandle();
+}
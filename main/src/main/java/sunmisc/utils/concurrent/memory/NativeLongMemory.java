@@ -0,0 +1,201 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Off-heap memory of {@code long} cells, laid out in the same
+ * power-of-two segments as {@link BitwiseSegmentsMemory}.
+ * <p>
+ * All segments, including those added by {@link #realloc(int)},
+ * belong to one shared {@link Arena}: closing any memory obtained
+ * through realloc frees all of them, after which every access
+ * fails with {@link IllegalStateException}. A realloc to a smaller
+ * size only narrows the view, the arena keeps the dropped segments
+ * until it is closed.
+ */
+public final class NativeLongMemory
+        implements LongModifiableMemory, AutoCloseable {
+    private static final int SHIFT = 3;
+    private final Arena arena;
+    private final MemorySegment[] segments;
+
+    public NativeLongMemory(final int size) {
+        this(Arena.ofShared(), size);
+    }
+
+    private NativeLongMemory(final Arena arena, final int size) {
+        this(arena, make(arena, size));
+    }
+
+    private NativeLongMemory(final Arena arena, final MemorySegment[] segments) {
+        this.arena = arena;
+        this.segments = segments;
+    }
+
+    @Override
+    public NativeLongMemory realloc(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] prev = this.segments;
+        final MemorySegment[] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = allocate(this.arena, 1 << p);
+        }
+        return new NativeLongMemory(this.arena, copy);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length;
+    }
+
+    @Override
+    public long fetchLong(final int index) {
+        return (long) LONGS.getAcquire(this.segmentFor(index), offset(index));
+    }
+
+    @Override
+    public void storeLong(final int index, final long value) {
+        LONGS.setRelease(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(final int index, final long value) {
+        return (long) LONGS.getAndSet(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(final int index, final long expected, final long value) {
+        return (long) LONGS.compareAndExchange(this.segmentFor(index), offset(index), expected, value);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(final int index, final long expected, final long value) {
+        return LONGS.compareAndSet(this.segmentFor(index), offset(index), expected, value);
+    }
+
+    @Override
+    public long fetchAndAddLong(final int index, final long value) {
+        return (long) LONGS.getAndAdd(this.segmentFor(index), offset(index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(final int index, final long mask) {
+        return (long) LONGS.getAndBitwiseOr(this.segmentFor(index), offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(final int index, final long mask) {
+        return (long) LONGS.getAndBitwiseAnd(this.segmentFor(index), offset(index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(final int index, final long mask) {
+        return (long) LONGS.getAndBitwiseXor(this.segmentFor(index), offset(index), mask);
+    }
+
+    // bulk plain accesses, fences give them acquire/release semantics
+    @Override
+    public void fillLong(final int from, final int to, final long value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        VarHandle.releaseFence();
+        for (int index = from; index < to; ) {
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, to - index);
+            if (value == 0 || value == -1) {
+                segment.asSlice(offset, (long) n << SHIFT).fill((byte) value);
+            } else {
+                final long first = offset >> SHIFT;
+                for (long i = first; i < first + n; ++i) {
+                    segment.setAtIndex(JAVA_LONG, i, value);
+                }
+            }
+            index += n;
+        }
+    }
+
+    @Override
+    public void copyFrom(final long[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        VarHandle.releaseFence();
+        for (int done = 0; done < length; ) {
+            final int index = dstPos + done;
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, length - done);
+            MemorySegment.copy(src, srcPos + done, segment, JAVA_LONG, offset, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final long[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final MemorySegment segment = this.segmentFor(index);
+            final long offset = offset(index);
+            final int n = (int) Math.min((segment.byteSize() - offset) >> SHIFT, length - done);
+            MemorySegment.copy(segment, JAVA_LONG, offset, dst, dstPos + done, n);
+            done += n;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void close() {
+        this.arena.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Long.toString(this.fetchLong(i)));
+        }
+        return joiner.toString();
+    }
+
+    private MemorySegment segmentFor(final int index) {
+        return this.segments[index < 2 ? 0 : 31 - numberOfLeadingZeros(index)];
+    }
+
+    // byte offset inside the segment, the top bit is the segment itself
+    private static long offset(final int index) {
+        return (long) (index < 2 ? index : index - Integer.highestOneBit(index)) << SHIFT;
+    }
+
+    private static MemorySegment allocate(final Arena arena, final int length) {
+        return arena.allocate((long) length << SHIFT, JAVA_LONG.byteAlignment());
+    }
+
+    private static MemorySegment[] make(final Arena arena, final int size) {
+        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final MemorySegment[] alloc = new MemorySegment[segments];
+        alloc[0] = allocate(arena, 2);
+        for (int segment = 1; segment < segments; ++segment) {
+            alloc[segment] = allocate(arena, 1 << segment);
+        }
+        return alloc;
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS = JAVA_LONG.varHandle();
+}
@@ -0,0 +1,159 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * Counter memory that places every cell on its own pair of cache lines,
+ * so threads updating neighbouring indices do not invalidate each other.
+ * Each cell costs {@code 128} bytes instead of {@code 8}, which limits
+ * the memory to {@code 2^27} cells.
+ */
+public final class PaddedLongMemory implements LongModifiableMemory {
+    // 128 bytes, as @Contended does, to defeat the adjacent-line prefetcher
+    private static final int STRIDE_SHIFT = 4;
+    // the largest segment still fits an array once padded
+    private static final int MAX_SEGMENTS = 31 - STRIDE_SHIFT;
+    private final long[][] segments;
+
+    public PaddedLongMemory(final int size) {
+        this(make(size));
+    }
+
+    private PaddedLongMemory(final long[][] segments) {
+        this.segments = segments;
+    }
+
+    // O(30), a smaller size keeps the leading segments
+    @Override
+    public PaddedLongMemory realloc(final int size) throws OutOfMemoryError {
+        final int aligned = segmentsFor(size);
+        final long[][] prev = this.segments;
+        final long[][] copy = Arrays.copyOf(prev, aligned);
+        for (int p = prev.length; p < aligned; ++p) {
+            copy[p] = padded(1 << p);
+        }
+        return new PaddedLongMemory(copy);
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.segments.length;
+    }
+
+    @Override
+    public long fetchLong(final int index) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAcquire(segment, slot(segment, index));
+    }
+
+    @Override
+    public void storeLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        LONGS.setRelease(segment, slot(segment, index), value);
+    }
+
+    @Override
+    public long fetchAndStoreLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndSet(segment, slot(segment, index), value);
+    }
+
+    @Override
+    public long compareAndExchangeLong(final int index,
+                                       final long expectedValue,
+                                       final long newValue) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.compareAndExchange(
+                segment, slot(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public boolean compareAndStoreLong(final int index,
+                                       final long expectedValue,
+                                       final long newValue) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return LONGS.compareAndSet(
+                segment, slot(segment, index),
+                expectedValue, newValue);
+    }
+
+    @Override
+    public long fetchAndAddLong(final int index, final long value) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndAdd(segment, slot(segment, index), value);
+    }
+
+    @Override
+    public long fetchAndBitwiseOrLong(final int index, final long mask) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndBitwiseOr(segment, slot(segment, index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseAndLong(final int index, final long mask) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndBitwiseAnd(segment, slot(segment, index), mask);
+    }
+
+    @Override
+    public long fetchAndBitwiseXorLong(final int index, final long mask) {
+        final long[] segment = this.segments[segmentForIndex(index)];
+        return (long) LONGS.getAndBitwiseXor(segment, slot(segment, index), mask);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Long.toString(this.fetchLong(i)));
+        }
+        return joiner.toString();
+    }
+
+    // log2
+    private static int segmentForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static int slot(final long[] segment, final int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        final int cells = (segment.length >> STRIDE_SHIFT) - 1;
+        return (index < 2 ? index + 1 : index - cells + 1) << STRIDE_SHIFT;
+    }
+
+    // one leading stride keeps the first cell away from the array header
+    private static long[] padded(final int cells) {
+        return new long[Math.toIntExact(((long) cells + 1) << STRIDE_SHIFT)];
+    }
+
+    private static int segmentsFor(final int size) {
+        final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        if (segments > MAX_SEGMENTS) {
+            throw new OutOfMemoryError("Requested size exceeds 2^" + MAX_SEGMENTS);
+        }
+        return segments;
+    }
+
+    private static long[][] make(final int size) {
+        final int segments = segmentsFor(size);
+        final long[][] alloc = new long[segments][];
+        alloc[0] = padded(2);
+        for (int segment = 1; segment < segments; ++segment) {
+            alloc[segment] = padded(1 << segment);
+        }
+        return alloc;
+    }
+
+    // VarHandle mechanics
+    private static final VarHandle LONGS
+            = MethodHandles.arrayElementVarHandle(long[].class);
+}
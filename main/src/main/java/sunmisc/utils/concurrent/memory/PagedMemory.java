@@ -0,0 +1,169 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Memory of equal power-of-two pages (4096 cells by default) behind a
+ * page directory: an index is split into a page and an offset with a
+ * shift and a mask, the capacity exceeds the requested size by less
+ * than one page and {@link #realloc(int)} copies only the directory,
+ * the pages themselves are shared with the result.
+ */
+public final class PagedMemory<E> implements ModifiableMemory<E> {
+    private static final int PAGE_SHIFT = 12;
+    private final ModifiableMemory<E>[] pages;
+    private final int shift;
+
+    public PagedMemory(final int size) {
+        this(size, PAGE_SHIFT);
+    }
+
+    public PagedMemory(final int size, final int pageShift) {
+        this(make(size, pageShift), pageShift);
+    }
+
+    private PagedMemory(final ModifiableMemory<E>[] pages, final int shift) {
+        this.pages = pages;
+        this.shift = shift;
+    }
+
+    // O(pages), a smaller size keeps the leading pages
+    @Override
+    public PagedMemory<E> realloc(final int size) {
+        final int count = pagesFor(size, this.shift);
+        final ModifiableMemory<E>[] prev = this.pages;
+        final ModifiableMemory<E>[] copy = Arrays.copyOf(prev, count);
+        for (int p = prev.length; p < count; ++p) {
+            copy[p] = new ArrayMemory<>(1 << this.shift);
+        }
+        return new PagedMemory<>(copy, this.shift);
+    }
+
+    @Override
+    public int length() {
+        return this.pages.length << this.shift;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        return this.pages[index >>> this.shift].fetch(this.offset(index));
+    }
+
+    @Override
+    public E fetchPlain(final int index) {
+        return this.pages[index >>> this.shift].fetchPlain(this.offset(index));
+    }
+
+    @Override
+    public E fetchOpaque(final int index) {
+        return this.pages[index >>> this.shift].fetchOpaque(this.offset(index));
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        this.pages[index >>> this.shift].store(this.offset(index), value);
+    }
+
+    @Override
+    public void storePlain(final int index, final E value) {
+        this.pages[index >>> this.shift].storePlain(this.offset(index), value);
+    }
+
+    @Override
+    public void storeOpaque(final int index, final E value) {
+        this.pages[index >>> this.shift].storeOpaque(this.offset(index), value);
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        return this.pages[index >>> this.shift].fetchAndStore(this.offset(index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expected,
+                                final E newValue) {
+        return this.pages[index >>> this.shift].compareAndExchange(
+                this.offset(index), expected, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expected,
+                                   final E newValue) {
+        return this.pages[index >>> this.shift].compareAndStore(
+                this.offset(index), expected, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStore(final int index,
+                                       final E expected,
+                                       final E newValue) {
+        return this.pages[index >>> this.shift].weakCompareAndStore(
+                this.offset(index), expected, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreRelease(final int index,
+                                              final E expected,
+                                              final E newValue) {
+        return this.pages[index >>> this.shift].weakCompareAndStoreRelease(
+                this.offset(index), expected, newValue);
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super E> action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final int i = this.offset(index);
+            final int n = Math.min((1 << this.shift) - i, to - index);
+            final int base = index - i;
+            this.pages[index >>> this.shift].forEachIndexed(i, i + n,
+                    (element, j) -> action.accept(element, base + j));
+            index += n;
+        }
+    }
+
+    @Override
+    public void fill(final int from, final int to, final E value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int index = from; index < to; ) {
+            final int i = this.offset(index);
+            final int n = Math.min((1 << this.shift) - i, to - index);
+            this.pages[index >>> this.shift].fill(i, i + n, value);
+            index += n;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(String.valueOf(x)));
+        return joiner.toString();
+    }
+
+    private int offset(final int index) {
+        return index & ((1 << this.shift) - 1);
+    }
+
+    private static int pagesFor(final int size, final int shift) {
+        return size == 0 ? 0 : ((size - 1) >>> shift) + 1;
+    }
+
+    private static <E> ModifiableMemory<E>[] make(final int size, final int shift) {
+        final int count = pagesFor(size, shift);
+        @SuppressWarnings("unchecked")
+        final ModifiableMemory<E>[] alloc = new ModifiableMemory[count];
+        for (int p = 0; p < count; ++p) {
+            alloc[p] = new ArrayMemory<>(1 << shift);
+        }
+        return alloc;
+    }
+}
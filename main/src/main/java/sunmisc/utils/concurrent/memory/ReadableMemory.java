@@ -3,7 +3,11 @@ package sunmisc.utils.concurrent.memory;
 import sunmisc.utils.Cursor;
 
 import java.util.Objects;
+import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ReadableMemory<E> {
 
@@ -11,6 +15,39 @@ public interface ReadableMemory<E> {
 
     int length();
 
+    // relaxed reads, by default as strong as fetch
+    default E fetchPlain(final int index) throws IndexOutOfBoundsException {
+        return this.fetch(index);
+    }
+
+    default E fetchOpaque(final int index) throws IndexOutOfBoundsException {
+        return this.fetch(index);
+    }
+
+    default void copyTo(final int srcPos,
+                        final E[] dst,
+                        final int dstPos,
+                        final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int i = 0; i < length; ++i) {
+            dst[dstPos + i] = this.fetch(srcPos + i);
+        }
+    }
+
+    default void copyTo(final int srcPos,
+                        final ModifiableMemory<? super E> dst,
+                        final int dstPos,
+                        final int length
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length());
+        for (int i = 0; i < length; ++i) {
+            dst.store(dstPos + i, this.fetch(srcPos + i));
+        }
+    }
+
     default Cursor<E> origin() {
         try {
             return this.length() > 0
@@ -24,13 +61,37 @@ public interface ReadableMemory<E> {
     default void forEach(final Consumer<? super E> action) {
         Objects.requireNonNull(action);
 
-        for (Cursor<E> cursor = this.origin();
-             cursor.exists();
-             cursor = cursor.next()) {
-            action.accept(cursor.element());
+        this.forEachIndexed((element, index) -> action.accept(element));
+    }
+
+    default void forEachIndexed(final ObjIntConsumer<? super E> action) {
+        this.forEachIndexed(0, this.length(), action);
+    }
+
+    default void forEachIndexed(final int from,
+                                final int to,
+                                final ObjIntConsumer<? super E> action
+    ) throws IndexOutOfBoundsException {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+
+        for (int index = from; index < to; ++index) {
+            action.accept(this.fetch(index), index);
         }
     }
 
+    default Spliterator<E> spliterator() {
+        return new MemorySpliterator<>(this, 0, this.length());
+    }
+
+    default Stream<E> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    default Stream<E> parallelStream() {
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+
     record CursorImpl<E>(
             int index,
             ReadableMemory<E> memory,
@@ -1,30 +1,48 @@
 package sunmisc.utils.concurrent.memory;
 
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 import static java.lang.Integer.numberOfLeadingZeros;
 
 public final class SegmentsMemory<E> implements ModifiableMemory<E> {
     private final ModifiableMemory<E>[] segments;
+    private final IntFunction<ModifiableMemory<E>> allocator;
 
     public SegmentsMemory(final int size) {
-        this(make(size));
+        this(size, ArrayMemory::new);
     }
 
-    private SegmentsMemory(final ModifiableMemory<E>[] segments) {
+    public SegmentsMemory(final int size,
+                          final IntFunction<ModifiableMemory<E>> allocator) {
+        this(make(size, allocator), allocator);
+    }
+
+    private SegmentsMemory(final ModifiableMemory<E>[] segments,
+                           final IntFunction<ModifiableMemory<E>> allocator) {
         this.segments = segments;
+        this.allocator = allocator;
+    }
+
+    // segments allocate their cells page by page on first write,
+    // a page never exceeds the power-of-two segment it belongs to
+    public static <E> SegmentsMemory<E> sparse(final int size) {
+        return new SegmentsMemory<>(size, n -> new SparseMemory<>(
+                n, Math.min(10, Integer.numberOfTrailingZeros(n))));
     }
 
-    // O(30)
+    // O(30), a smaller size keeps the leading segments
     @Override
     public SegmentsMemory<E> realloc(final int size) {
         final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
         final ModifiableMemory<E>[] prev = this.segments;
         final ModifiableMemory<E>[] copy = Arrays.copyOf(prev, aligned);
         for (int p = prev.length; p < aligned; ++p) {
-            copy[p] = new ArrayMemory<>(1 << p);
+            copy[p] = this.allocator.apply(1 << p);
         }
-        return new SegmentsMemory<>(copy);
+        return new SegmentsMemory<>(copy, this.allocator);
     }
     @Override
     public int length() {
@@ -68,6 +86,127 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         segment.store(i, val);
     }
 
+    @Override
+    public E fetchPlain(final int index) {
+        final ReadableMemory<E> segment = this.segments[segmentForIndex(index)];
+        return segment.fetchPlain(this.indexForSegment(segment, index));
+    }
+
+    @Override
+    public E fetchOpaque(final int index) {
+        final ReadableMemory<E> segment = this.segments[segmentForIndex(index)];
+        return segment.fetchOpaque(this.indexForSegment(segment, index));
+    }
+
+    @Override
+    public void storePlain(final int index, final E val) {
+        final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+        segment.storePlain(this.indexForSegment(segment, index), val);
+    }
+
+    @Override
+    public void storeOpaque(final int index, final E val) {
+        final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+        segment.storeOpaque(this.indexForSegment(segment, index), val);
+    }
+
+    @Override
+    public boolean weakCompareAndStore(final int index,
+                                       final E expected,
+                                       final E newValue) {
+        final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+        return segment.weakCompareAndStore(
+                this.indexForSegment(segment, index), expected, newValue);
+    }
+
+    @Override
+    public boolean weakCompareAndStoreRelease(final int index,
+                                              final E expected,
+                                              final E newValue) {
+        final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+        return segment.weakCompareAndStoreRelease(
+                this.indexForSegment(segment, index), expected, newValue);
+    }
+
+    @Override
+    public void forEachIndexed(final int from,
+                               final int to,
+                               final ObjIntConsumer<? super E> action) {
+        Objects.checkFromToIndex(from, to, this.length());
+        Objects.requireNonNull(action);
+        for (int index = from; index < to; ) {
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            final int i = this.indexForSegment(segment, index);
+            final int n = Math.min(segment.length() - i, to - index);
+            final int base = index - i;
+            segment.forEachIndexed(i, i + n, (element, j) -> action.accept(element, base + j));
+            index += n;
+        }
+    }
+
+    @Override
+    public void fill(final int from, final int to, final E value) {
+        Objects.checkFromToIndex(from, to, this.length());
+        for (int index = from; index < to; ) {
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            final int i = this.indexForSegment(segment, index);
+            final int n = Math.min(segment.length() - i, to - index);
+            segment.fill(i, i + n, value);
+            index += n;
+        }
+    }
+
+    @Override
+    public void copyFrom(final E[] src,
+                         final int srcPos,
+                         final int dstPos,
+                         final int length) {
+        Objects.checkFromIndexSize(srcPos, length, src.length);
+        Objects.checkFromIndexSize(dstPos, length, this.length());
+        for (int done = 0; done < length; ) {
+            final int index = dstPos + done;
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            final int i = this.indexForSegment(segment, index);
+            final int n = Math.min(segment.length() - i, length - done);
+            segment.copyFrom(src, srcPos + done, i, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final E[] dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length);
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            final int i = this.indexForSegment(segment, index);
+            final int n = Math.min(segment.length() - i, length - done);
+            segment.copyTo(i, dst, dstPos + done, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void copyTo(final int srcPos,
+                       final ModifiableMemory<? super E> dst,
+                       final int dstPos,
+                       final int length) {
+        Objects.checkFromIndexSize(srcPos, length, this.length());
+        Objects.checkFromIndexSize(dstPos, length, dst.length());
+        for (int done = 0; done < length; ) {
+            final int index = srcPos + done;
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            final int i = this.indexForSegment(segment, index);
+            final int n = Math.min(segment.length() - i, length - done);
+            segment.copyTo(i, dst, dstPos + done, n);
+            done += n;
+        }
+    }
+
     @Override
     public String toString() {
         final StringBuilder builder = new StringBuilder("\n");
@@ -88,13 +227,14 @@ public final class SegmentsMemory<E> implements ModifiableMemory<E> {
         return index < 2 ? index : index - segment.length();
     }
 
-    private static <E> ModifiableMemory<E>[] make(final int size) {
+    private static <E> ModifiableMemory<E>[] make(final int size,
+                                                  final IntFunction<ModifiableMemory<E>> allocator) {
         final int segments = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
         @SuppressWarnings("unchecked")
         final ModifiableMemory<E>[] alloc = new ModifiableMemory[segments];
-        alloc[0] = new ArrayMemory<>(2);
+        alloc[0] = allocator.apply(2);
         for (int segment = 1; segment < segments; ++segment) {
-            alloc[segment] = new ArrayMemory<>(1 << segment);
+            alloc[segment] = allocator.apply(1 << segment);
         }
         return alloc;
     }
@@ -0,0 +1,246 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * Segment memory with cheap point-in-time snapshots. Every segment is
+ * tagged with the epoch it is writable in; {@link #snapshot()} advances
+ * the epoch and freezes the segments of the previous one, and the first
+ * write to a frozen segment replaces it with a copy. Segments that are
+ * not written after a snapshot are never copied.
+ * <p>
+ * A writer only registers in its own segment, so writers of different
+ * segments never touch a shared word; a snapshot waits just for the
+ * writes already inside a segment it freezes. Snapshots are taken one at
+ * a time under a lock, reads of this memory and of its snapshots never
+ * lock.
+ */
+public final class SnapshotMemory<E> implements ModifiableMemory<E> {
+    private static final int MAX_SEGMENTS = 31;
+    private final AtomicReferenceArray<Segment<E>> segments
+            = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong epoch = new AtomicLong();
+    private final ReentrantLock snapshots = new ReentrantLock();
+
+    public SnapshotMemory(final int size) {
+        this.ensureCapacity(size);
+    }
+
+    public ReadableMemory<E> snapshot() {
+        this.snapshots.lock();
+        try {
+            final int n = this.count.get();
+            // writers that read an older epoch from now on step back
+            final long epoch = this.epoch.incrementAndGet();
+            @SuppressWarnings("unchecked")
+            final ModifiableMemory<E>[] frozen = new ModifiableMemory[n];
+            for (int p = 0; p < n; ++p) {
+                final Segment<E> segment = this.segments.getAcquire(p);
+                if (segment.epoch == epoch) {
+                    // already copied by a writer of the new epoch
+                    frozen[p] = segment.origin;
+                } else {
+                    segment.freeze();
+                    frozen[p] = segment.memory;
+                }
+            }
+            return new Snapshot<>(frozen);
+        } finally {
+            this.snapshots.unlock();
+        }
+    }
+
+    public void ensureCapacity(final int size) {
+        final int aligned = 32 - numberOfLeadingZeros(Math.max(size - 1, 1));
+        final long epoch = this.epoch.get();
+        for (int p = this.count.get(); p < aligned; ++p) {
+            if (this.segments.get(p) == null) {
+                this.segments.compareAndSet(p, null, new Segment<>(
+                        new ArrayMemory<>(p == 0 ? 2 : 1 << p), epoch, null));
+            }
+        }
+        this.count.accumulateAndGet(aligned, Math::max);
+    }
+
+    // grows in place and never shrinks, the result is always this
+    @Override
+    public SnapshotMemory<E> realloc(final int size) {
+        this.ensureCapacity(size);
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return 1 << this.count.get();
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final Segment<E> segment = this.segments.getAcquire(segmentForIndex(index));
+        if (segment == null) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        final ModifiableMemory<E> memory = segment.memory;
+        return memory.fetch(indexForSegment(memory, index));
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final Segment<E> segment = this.enter(index);
+        try {
+            return segment.memory.fetchAndStore(indexForSegment(segment.memory, index), value);
+        } finally {
+            segment.exit();
+        }
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expected,
+                                final E newValue) {
+        final Segment<E> segment = this.enter(index);
+        try {
+            return segment.memory.compareAndExchange(
+                    indexForSegment(segment.memory, index), expected, newValue);
+        } finally {
+            segment.exit();
+        }
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expected,
+                                   final E newValue) {
+        final Segment<E> segment = this.enter(index);
+        try {
+            return segment.memory.compareAndStore(
+                    indexForSegment(segment.memory, index), expected, newValue);
+        } finally {
+            segment.exit();
+        }
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final Segment<E> segment = this.enter(index);
+        try {
+            segment.memory.store(indexForSegment(segment.memory, index), value);
+        } finally {
+            segment.exit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(String.valueOf(x)));
+        return joiner.toString();
+    }
+
+    // the segment of the current epoch with this writer inside; a segment
+    // of an older epoch is frozen and copied once, racing writers agree by CAS
+    private Segment<E> enter(final int index) {
+        final int p = segmentForIndex(index);
+        for (;;) {
+            final long epoch = this.epoch.get();
+            final Segment<E> segment = this.segments.getAcquire(p);
+            if (segment == null) {
+                throw new IndexOutOfBoundsException(index);
+            } else if (segment.epoch < epoch) {
+                segment.freeze();
+                final ModifiableMemory<E> frozen = segment.memory;
+                final ModifiableMemory<E> copy = new ArrayMemory<>(frozen.length());
+                frozen.copyTo(0, copy, 0, frozen.length());
+                this.segments.compareAndSet(p, segment, new Segment<>(copy, epoch, frozen));
+            } else if (segment.epoch == epoch && segment.enter()) {
+                // a snapshot started meanwhile would miss the write
+                if (this.epoch.get() == epoch) {
+                    return segment;
+                }
+                segment.exit();
+            }
+        }
+    }
+
+    // log2
+    private static int segmentForIndex(final int index) {
+        return index < 2 ? 0 : 31 - numberOfLeadingZeros(index);
+    }
+
+    private static int indexForSegment(final ReadableMemory<?> segment, final int index) {
+        return index < 2 ? index : index - segment.length();
+    }
+
+    private static final class Segment<E> {
+        private static final int FROZEN = Integer.MIN_VALUE;
+        private final ModifiableMemory<E> memory;
+        private final long epoch;
+        // the frozen segment this one was copied from, if any
+        private final ModifiableMemory<E> origin;
+        // writers inside, the sign bit once frozen
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private Segment(final ModifiableMemory<E> memory,
+                        final long epoch,
+                        final ModifiableMemory<E> origin) {
+            this.memory = memory;
+            this.epoch = epoch;
+            this.origin = origin;
+        }
+
+        private boolean enter() {
+            for (int s = this.writers.get(); s >= 0; ) {
+                if (s == (s = this.writers.compareAndExchange(s, s + 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void exit() {
+            this.writers.decrementAndGet();
+        }
+
+        // no writer enters afterwards, the ones inside are waited for
+        private void freeze() {
+            for (int s = this.writers.get(); s >= 0; ) {
+                if (s == (s = this.writers.compareAndExchange(s, s | FROZEN))) {
+                    break;
+                }
+            }
+            while (this.writers.get() != FROZEN) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private record Snapshot<E>(ModifiableMemory<E>[] segments) implements ReadableMemory<E> {
+
+        @Override
+        public E fetch(final int index) {
+            final ModifiableMemory<E> segment = this.segments[segmentForIndex(index)];
+            return segment.fetch(indexForSegment(segment, index));
+        }
+
+        @Override
+        public int length() {
+            return 1 << this.segments.length;
+        }
+
+        @Override
+        public String toString() {
+            final StringJoiner joiner = new StringJoiner(
+                    ", ", "[", "]");
+            this.forEach(x -> joiner.add(String.valueOf(x)));
+            return joiner.toString();
+        }
+    }
+}
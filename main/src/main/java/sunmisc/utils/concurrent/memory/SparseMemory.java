@@ -0,0 +1,158 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * Memory that allocates its cells lazily in fixed power-of-two pages:
+ * the first write into a page installs it with a CAS, reads of a page
+ * that was never written return {@code null} and allocate nothing.
+ * Writes that cannot change a missing page, such as storing
+ * {@code null} or a CAS from a non-null value, do not allocate either.
+ * <p>
+ * The page directory is split into power-of-two parts, as the segments
+ * of {@link SegmentsMemory}, and is shared by every memory returned from
+ * {@link #realloc(int)}: a page installed or written through any of them
+ * is seen by all the others.
+ */
+public final class SparseMemory<E> implements ModifiableMemory<E> {
+    private static final int PAGE_SHIFT = 10;
+    private final AtomicReferenceArray<AtomicReferenceArray<ModifiableMemory<E>>> directory;
+    private final int length;
+    private final int shift;
+
+    public SparseMemory(final int size) {
+        this(size, PAGE_SHIFT);
+    }
+
+    public SparseMemory(final int size, final int pageShift) {
+        this(new AtomicReferenceArray<>(Integer.SIZE), size, pageShift);
+    }
+
+    private SparseMemory(final AtomicReferenceArray<AtomicReferenceArray<ModifiableMemory<E>>> directory,
+                         final int length,
+                         final int shift) {
+        this.directory = directory;
+        this.length = length;
+        this.shift = shift;
+    }
+
+    // O(1), the directory is only re-bounded and never written here;
+    // the pages past a smaller size stay with the memories sharing them
+    @Override
+    public SparseMemory<E> realloc(final int size) {
+        return new SparseMemory<>(this.directory, size, this.shift);
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public E fetch(final int index) {
+        final ModifiableMemory<E> page = this.pageFor(index);
+        return page == null ? null : page.fetch(this.indexForPage(index));
+    }
+
+    @Override
+    public void store(final int index, final E value) {
+        final ModifiableMemory<E> page = value == null
+                ? this.pageFor(index)
+                : this.installPage(index);
+        if (page != null) {
+            page.store(this.indexForPage(index), value);
+        }
+    }
+
+    @Override
+    public E fetchAndStore(final int index, final E value) {
+        final ModifiableMemory<E> page = value == null
+                ? this.pageFor(index)
+                : this.installPage(index);
+        return page == null ? null : page.fetchAndStore(this.indexForPage(index), value);
+    }
+
+    @Override
+    public E compareAndExchange(final int index,
+                                final E expected,
+                                final E newValue) {
+        final ModifiableMemory<E> page = expected == null && newValue != null
+                ? this.installPage(index)
+                : this.pageFor(index);
+        return page == null ? null : page.compareAndExchange(
+                this.indexForPage(index), expected, newValue);
+    }
+
+    @Override
+    public boolean compareAndStore(final int index,
+                                   final E expected,
+                                   final E newValue) {
+        final ModifiableMemory<E> page = expected == null && newValue != null
+                ? this.installPage(index)
+                : this.pageFor(index);
+        return page == null
+                ? expected == null
+                : page.compareAndStore(this.indexForPage(index), expected, newValue);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        this.forEach(x -> joiner.add(String.valueOf(x)));
+        return joiner.toString();
+    }
+
+    private ModifiableMemory<E> pageFor(final int index) {
+        Objects.checkIndex(index, this.length);
+        return this.page(index >>> this.shift);
+    }
+
+    private ModifiableMemory<E> page(final int p) {
+        final AtomicReferenceArray<ModifiableMemory<E>> part
+                = this.directory.getAcquire(partForPage(p));
+        return part == null ? null : part.getAcquire(indexForPart(p));
+    }
+
+    private ModifiableMemory<E> installPage(final int index) {
+        final ModifiableMemory<E> page = this.pageFor(index);
+        if (page != null) {
+            return page;
+        }
+        final int p = index >>> this.shift;
+        final AtomicReferenceArray<ModifiableMemory<E>> part = this.installPart(p);
+        final ModifiableMemory<E> fresh = new ArrayMemory<>(1 << this.shift);
+        final ModifiableMemory<E> witness = part.compareAndExchange(
+                indexForPart(p), null, fresh);
+        return witness == null ? fresh : witness;
+    }
+
+    private AtomicReferenceArray<ModifiableMemory<E>> installPart(final int p) {
+        final int d = partForPage(p);
+        final AtomicReferenceArray<ModifiableMemory<E>> part = this.directory.getAcquire(d);
+        if (part != null) {
+            return part;
+        }
+        final AtomicReferenceArray<ModifiableMemory<E>> fresh
+                = new AtomicReferenceArray<>(d == 0 ? 2 : 1 << d);
+        final AtomicReferenceArray<ModifiableMemory<E>> witness
+                = this.directory.compareAndExchange(d, null, fresh);
+        return witness == null ? fresh : witness;
+    }
+
+    private int indexForPage(final int index) {
+        return index & ((1 << this.shift) - 1);
+    }
+
+    private static int partForPage(final int p) {
+        return p < 2 ? 0 : 31 - numberOfLeadingZeros(p);
+    }
+
+    private static int indexForPart(final int p) {
+        return p < 2 ? p : p - Integer.highestOneBit(p);
+    }
+}
@@ -0,0 +1,215 @@
+package sunmisc.utils.concurrent.memory;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Array of counters in the manner of {@link java.util.concurrent.atomic.LongAdder}:
+ * updates go to a base memory until a CAS on it fails, then to stripes
+ * that are allocated one by one and doubled on further collisions, up to
+ * the given number of stripes. A read sums the base and every stripe.
+ * Sums are not atomic snapshots under concurrent updates.
+ * <p>
+ * The stripes are shared by every memory returned from {@link #realloc(int)}
+ * and grown lazily to its length, never shrunk, so they keep their counts
+ * as long as the underlying memory shares its cells on realloc.
+ */
+public final class StripedCounterMemory implements ReadableMemory<Long> {
+    // CAS attempts on stripes before the update falls back to fetchAndAdd
+    private static final int ATTEMPTS = 3;
+    private final LongModifiableMemory base;
+    private final Stripes stripes;
+
+    public StripedCounterMemory(final int size) {
+        this(size, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounterMemory(final int size, final int stripes) {
+        this(size, stripes, LongSegmentsMemory::new);
+    }
+
+    public StripedCounterMemory(final int size,
+                                final int stripes,
+                                final IntFunction<LongModifiableMemory> allocator) {
+        this(allocator.apply(size), new Stripes(ceilingPowerOfTwo(stripes), allocator));
+    }
+
+    private StripedCounterMemory(final LongModifiableMemory base,
+                                 final Stripes stripes) {
+        this.base = base;
+        this.stripes = stripes;
+    }
+
+    public void add(final int index, final long x) {
+        final LongModifiableMemory b = this.base;
+        final Stripes st = this.stripes;
+        int width = st.width.get();
+        if (width == 0) {
+            final long v = b.fetchLong(index);
+            if (b.compareAndStoreLong(index, v, v + x)) {
+                return;
+            }
+            width = st.expand(0);
+        }
+        final int slot = st.slot();
+        int h = st.probe(slot);
+        LongModifiableMemory c = this.stripe(h & (width - 1));
+        for (int attempt = 0; attempt < ATTEMPTS; ++attempt) {
+            final long v = c.fetchLong(index);
+            if (c.compareAndStoreLong(index, v, v + x)) {
+                return;
+            }
+            // a collision: move this thread elsewhere for the next updates,
+            // a repeated one also widens the stripes
+            h = st.rehash(slot, h);
+            width = attempt == 0 ? st.width.get() : st.expand(width);
+            c = this.stripe(h & (width - 1));
+        }
+        c.fetchAndAddLong(index, x);
+    }
+
+    public void increment(final int index) {
+        this.add(index, 1L);
+    }
+
+    public void decrement(final int index) {
+        this.add(index, -1L);
+    }
+
+    public long sum(final int index) {
+        long sum = this.base.fetchLong(index);
+        final AtomicReferenceArray<LongModifiableMemory> cs = this.stripes.cells;
+        for (int i = 0, n = cs.length(); i < n; ++i) {
+            final LongModifiableMemory c = cs.getAcquire(i);
+            if (c != null && index < c.length()) {
+                sum += c.fetchLong(index);
+            }
+        }
+        return sum;
+    }
+
+    public void reset(final int index) {
+        this.base.storeLong(index, 0L);
+        final AtomicReferenceArray<LongModifiableMemory> cs = this.stripes.cells;
+        for (int i = 0, n = cs.length(); i < n; ++i) {
+            final LongModifiableMemory c = cs.getAcquire(i);
+            if (c != null && index < c.length()) {
+                c.storeLong(index, 0L);
+            }
+        }
+    }
+
+    public long sumThenReset(final int index) {
+        long sum = this.base.fetchAndStoreLong(index, 0L);
+        final AtomicReferenceArray<LongModifiableMemory> cs = this.stripes.cells;
+        for (int i = 0, n = cs.length(); i < n; ++i) {
+            final LongModifiableMemory c = cs.getAcquire(i);
+            if (c != null && index < c.length()) {
+                sum += c.fetchAndStoreLong(index, 0L);
+            }
+        }
+        return sum;
+    }
+
+    // the shared stripes keep their size on a shrink, so the memory
+    // it is called on still sums every index it covers
+    public StripedCounterMemory realloc(final int size) throws OutOfMemoryError {
+        return new StripedCounterMemory(this.base.realloc(size), this.stripes);
+    }
+
+    @Override
+    public Long fetch(final int index) {
+        return this.sum(index);
+    }
+
+    @Override
+    public int length() {
+        return this.base.length();
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ", "[", "]");
+        for (int i = 0, n = this.length(); i < n; ++i) {
+            joiner.add(Long.toString(this.sum(i)));
+        }
+        return joiner.toString();
+    }
+
+    // installs the stripe or grows it to the length of this memory
+    private LongModifiableMemory stripe(final int i) {
+        final AtomicReferenceArray<LongModifiableMemory> cs = this.stripes.cells;
+        final int n = this.base.length();
+        for (LongModifiableMemory c = cs.getAcquire(i); ; ) {
+            if (c != null && c.length() >= n) {
+                return c;
+            }
+            final LongModifiableMemory fresh = c == null
+                    ? this.stripes.allocator.apply(n)
+                    : c.realloc(n);
+            final LongModifiableMemory witness = cs.compareAndExchange(i, c, fresh);
+            c = witness == c ? fresh : witness;
+        }
+    }
+
+    private static int ceilingPowerOfTwo(final int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private static final class Stripes {
+        private final AtomicReferenceArray<LongModifiableMemory> cells;
+        // stripes in use, zero until the base sees contention
+        private final AtomicInteger width = new AtomicInteger();
+        // no ThreadLocal here: a probe per thread id bucket, rehashed on collision
+        private final AtomicIntegerArray probes;
+        private final IntFunction<LongModifiableMemory> allocator;
+
+        private Stripes(final int limit,
+                        final IntFunction<LongModifiableMemory> allocator) {
+            this.cells = new AtomicReferenceArray<>(limit);
+            this.probes = new AtomicIntegerArray(Math.max(limit << 2, 4));
+            this.allocator = allocator;
+        }
+
+        private int slot() {
+            final long id = Thread.currentThread().threadId();
+            return hash(id) & (this.probes.length() - 1);
+        }
+
+        private int probe(final int slot) {
+            final int h = this.probes.getPlain(slot);
+            return h != 0 ? h : hash(Thread.currentThread().threadId()) | 1;
+        }
+
+        private int rehash(final int slot, final int h) {
+            final int next = advanceProbe(h);
+            this.probes.setPlain(slot, next);
+            return next;
+        }
+
+        // the new width, which another thread may have doubled already
+        private int expand(final int width) {
+            final int limit = this.cells.length();
+            if (width < limit) {
+                this.width.compareAndSet(width, width == 0 ? Math.min(2, limit) : width << 1);
+            }
+            return this.width.get();
+        }
+
+        private static int hash(final long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+
+        // xorshift
+        private static int advanceProbe(int h) {
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package sunmisc.utils.concurrent.memory;
+
+/**
+ * Decides how far a memory may shrink given how many of its leading
+ * cells are still occupied, see {@link ModifiableMemory#trim(int, TrimPolicy)}.
+ */
+@FunctionalInterface
+public interface TrimPolicy {
+
+    // the size to shrink to, anything not below length keeps the memory
+    int sizeFor(int length, int occupied);
+
+    static TrimPolicy never() {
+        return (length, occupied) -> length;
+    }
+
+    // halves while at most a quarter is occupied, so the result keeps
+    // room to grow twice before a burst reallocates it again
+    static TrimPolicy quarter(final int minimum) {
+        return (length, occupied) -> {
+            int size = length;
+            while (size > minimum && occupied <= size >>> 2) {
+                size >>>= 1;
+            }
+            return size;
+        };
+    }
+}
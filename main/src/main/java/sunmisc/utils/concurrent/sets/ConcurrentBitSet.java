@@ -1,88 +1,240 @@
 package sunmisc.utils.concurrent.sets;
 
 import sunmisc.utils.Cursor;
-import sunmisc.utils.concurrent.memory.BitwiseModifiableMemory;
-import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongModifiableMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
 
 import java.util.AbstractSet;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public final class ConcurrentBitSet extends AbstractSet<Integer> implements Set<Integer> {
     private static final int ADDRESS_BITS_PER_CELL
             = Integer.numberOfTrailingZeros(Long.SIZE);
     private static final int BITS_PER_CELL =
             1 << ADDRESS_BITS_PER_CELL;
-    private final AtomicReference<BitwiseModifiableMemory<Long>> memory =
-            new AtomicReference<>(
-                    new BitwiseSegmentsMemory<>(long.class, 4)
-            );
+    // words per fork join leaf
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+    private final AtomicReference<LongModifiableMemory> memory;
+    // cardinality, counted from the previous values of the words
+    private final LongAdder counter = new LongAdder();
 
-    @Override
-    public boolean add(final Integer value) {
-        final int index = cellIndex(value);
-        if (this.memory.get().length() <= value) {
-            this.memory.updateAndGet(old -> {
-                final int len = Math.max(old.length(), value + 1);
-                return old.realloc(len);
-            });
+    public ConcurrentBitSet() {
+        this(new LongSegmentsMemory(4));
+    }
+
+    public ConcurrentBitSet(final LongModifiableMemory memory) {
+        this.memory = new AtomicReference<>(memory);
+        this.counter.add(memory.bitCount());
+    }
+
+    public boolean set(final int bitIndex) {
+        final int index = cellIndex(bitIndex);
+        final LongModifiableMemory mem = this.grow(index + 1);
+        final long mask = 1L << bitIndex;
+        if ((mem.fetchAndBitwiseOrLong(index, mask) & mask) == 0) {
+            this.counter.increment();
+            return true;
         }
-        final long mask = 1L << value;
-        return (this.memory.get().fetchAndBitwiseOr(index, mask) & mask) == 0;
+        return false;
     }
 
-    @Override
-    public boolean remove(final Object value) {
-        final int bitIndex = (int) value;
+    public boolean clear(final int bitIndex) {
         final int index = cellIndex(bitIndex);
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        final LongModifiableMemory mem = this.memory.get();
         if (index < mem.length()) {
             final long mask = 1L << bitIndex;
-            return (mem.fetchAndBitwiseAnd(index, ~mask) & mask) != 0;
+            if ((mem.fetchAndBitwiseAndLong(index, ~mask) & mask) != 0) {
+                this.counter.decrement();
+                return true;
+            }
         }
         return false;
     }
 
+    public void set(final int fromIndex, final int toIndex) {
+        this.combine(fromIndex, toIndex, Algebra.OR);
+    }
+
+    public void clear(final int fromIndex, final int toIndex) {
+        this.combine(fromIndex, toIndex, Algebra.AND_NOT);
+    }
+
+    public void flip(final int fromIndex, final int toIndex) {
+        this.combine(fromIndex, toIndex, Algebra.XOR);
+    }
+
+    public boolean get(final int bitIndex) {
+        final int index = cellIndex(bitIndex);
+        final LongModifiableMemory mem = this.memory.get();
+        return index < mem.length() && (mem.fetchLong(index) & (1L << bitIndex)) != 0;
+    }
+
+    @Override
+    public boolean add(final Integer value) {
+        return this.set(value);
+    }
+
+    @Override
+    public boolean remove(final Object value) {
+        return this.clear((int) value);
+    }
+
     @Override
     public boolean contains(final Object o) {
-        final int bitIndex = (int) o;
-        final int index = cellIndex(bitIndex);
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        return index < mem.length() && (mem.fetch(index) & (1L << bitIndex)) != 0;
+        return this.get((int) o);
     }
 
     @Override
     public int size() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        final int n = mem.length();
-        int sum = 0;
-        for (int i = 0; i < n; ++i) {
-            sum += Long.bitCount(mem.fetch(i));
-        }
-        return sum;
+        // let's handle the overflow
+        return Math.clamp(this.counter.sum(), 0, Integer.MAX_VALUE);
     }
 
     @Override
     public boolean isEmpty() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        final int n = mem.length();
-        for (int i = 0; i < n; ++i) {
-            if (mem.fetch(i) != 0) {
-                return false;
-            }
-        }
-        return true;
+        return this.counter.sum() <= 0L;
     }
 
+    // word by word, so that a concurrent set is either kept or counted out
     @Override
     public void clear() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
-        final int n = mem.length();
-        for (int i = 0; i < n; ++i) {
-            mem.store(i,0L);
+        final LongModifiableMemory mem = this.memory.get();
+        long cleared = 0;
+        for (int i = 0, n = mem.length(); i < n; ++i) {
+            if (mem.fetchLong(i) != 0) {
+                cleared += Long.bitCount(mem.fetchAndStoreLong(i, 0L));
+            }
         }
+        this.counter.add(-cleared);
+    }
+
+    public void or(final ConcurrentBitSet other) {
+        this.combine(other, Algebra.OR, null);
+    }
+
+    public void and(final ConcurrentBitSet other) {
+        this.combine(other, Algebra.AND, null);
+    }
+
+    public void andNot(final ConcurrentBitSet other) {
+        this.combine(other, Algebra.AND_NOT, null);
+    }
+
+    public void xor(final ConcurrentBitSet other) {
+        this.combine(other, Algebra.XOR, null);
+    }
+
+    public void parallelOr(final ConcurrentBitSet other) {
+        this.parallelOr(other, ForkJoinPool.commonPool());
+    }
+
+    public void parallelOr(final ConcurrentBitSet other, final ForkJoinPool pool) {
+        this.combine(other, Algebra.OR, Objects.requireNonNull(pool));
+    }
+
+    public void parallelAnd(final ConcurrentBitSet other) {
+        this.parallelAnd(other, ForkJoinPool.commonPool());
+    }
+
+    public void parallelAnd(final ConcurrentBitSet other, final ForkJoinPool pool) {
+        this.combine(other, Algebra.AND, Objects.requireNonNull(pool));
+    }
+
+    public void parallelAndNot(final ConcurrentBitSet other) {
+        this.parallelAndNot(other, ForkJoinPool.commonPool());
+    }
+
+    public void parallelAndNot(final ConcurrentBitSet other, final ForkJoinPool pool) {
+        this.combine(other, Algebra.AND_NOT, Objects.requireNonNull(pool));
+    }
+
+    public void parallelXor(final ConcurrentBitSet other) {
+        this.parallelXor(other, ForkJoinPool.commonPool());
+    }
+
+    public void parallelXor(final ConcurrentBitSet other, final ForkJoinPool pool) {
+        this.combine(other, Algebra.XOR, Objects.requireNonNull(pool));
+    }
+
+    public boolean intersects(final ConcurrentBitSet other) {
+        final LongModifiableMemory mem = this.memory.get();
+        final LongModifiableMemory src = other.memory.get();
+        for (int i = 0, n = Math.min(mem.length(), src.length()); i < n; ++i) {
+            if ((mem.fetchLong(i) & src.fetchLong(i)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a null pool runs in the caller
+    private void combine(final ConcurrentBitSet other,
+                         final Algebra op,
+                         final ForkJoinPool pool) {
+        final LongModifiableMemory src = other.memory.get();
+        final LongModifiableMemory mem;
+        final int to;
+        if (op.grows()) {
+            // only up to the last non-zero word, grown once up front
+            int n = src.length();
+            while (n > 0 && src.fetchLong(n - 1) == 0) {
+                --n;
+            }
+            mem = this.grow(n);
+            to = n;
+        } else {
+            mem = this.memory.get();
+            to = op == Algebra.AND
+                    ? mem.length()
+                    : Math.min(mem.length(), src.length());
+        }
+        if (pool == null || to <= PARALLEL_THRESHOLD) {
+            this.counter.add(op.apply(mem, src, 0, to));
+        } else {
+            pool.invoke(new Combine(mem, src, op, this.counter, 0, to));
+        }
+    }
+
+    // one atomic operation per word of the range
+    private void combine(final int fromIndex,
+                         final int toIndex,
+                         final Algebra op) {
+        Objects.checkFromToIndex(fromIndex, toIndex, Integer.MAX_VALUE);
+        if (fromIndex == toIndex) {
+            return;
+        }
+        final int first = cellIndex(fromIndex), last = cellIndex(toIndex - 1);
+        final LongModifiableMemory mem = op.grows()
+                ? this.grow(last + 1)
+                : this.memory.get();
+        final int end = Math.min(last, mem.length() - 1);
+        long delta = 0;
+        for (int i = first; i <= end; ++i) {
+            long mask = -1L;
+            if (i == first) {
+                mask &= -1L << fromIndex;
+            }
+            if (i == last) {
+                mask &= -1L >>> -toIndex;
+            }
+            delta += op.apply(mem, i, mask);
+        }
+        this.counter.add(delta);
+    }
+
+    private LongModifiableMemory grow(final int words) {
+        final LongModifiableMemory mem = this.memory.get();
+        return mem.length() >= words ? mem : this.memory.updateAndGet(old ->
+                old.length() < words ? old.realloc(words) : old
+        );
     }
 
     private static int cellIndex(final int bitIndex) {
@@ -104,32 +256,173 @@ public final class ConcurrentBitSet extends AbstractSet<Integer> implements Set<
         );
     }
 
-    private int nextSetBit(final int fromIndex) {
+    // -1 if there is no set bit at or after fromIndex
+    public int nextSetBit(final int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException(fromIndex);
+        }
         int u = cellIndex(fromIndex);
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        final LongModifiableMemory mem = this.memory.get();
         if (u >= mem.length()) {
-            throw new IndexOutOfBoundsException();
+            return -1;
         }
-        for (long word = mem.fetch(u) & (-1L << fromIndex);;) {
+        for (long word = mem.fetchLong(u) & (-1L << fromIndex);;) {
             if (word != 0) {
                 return (u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word);
             } else if (++u >= mem.length()) {
                 return -1;
             }
-            word = mem.fetch(u);
+            word = mem.fetchLong(u);
         }
     }
 
+    // bits past the memory are clear, so there always is one
+    public int nextClearBit(final int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException(fromIndex);
+        }
+        int u = cellIndex(fromIndex);
+        final LongModifiableMemory mem = this.memory.get();
+        if (u >= mem.length()) {
+            return fromIndex;
+        }
+        for (long word = ~mem.fetchLong(u) & (-1L << fromIndex);;) {
+            if (word != 0) {
+                return (u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word);
+            } else if (++u >= mem.length()) {
+                return u * BITS_PER_CELL;
+            }
+            word = ~mem.fetchLong(u);
+        }
+    }
+
+    public void forEachSetBit(final IntConsumer action) {
+        Objects.requireNonNull(action);
+        final LongModifiableMemory mem = this.memory.get();
+        for (int u = 0, n = mem.length(); u < n; ++u) {
+            for (long word = mem.fetchLong(u); word != 0; word &= word - 1) {
+                action.accept((u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word));
+            }
+        }
+    }
+
+    // not stream(), which Collection already defines over Integer
+    public IntStream intStream() {
+        return IntStream.iterate(
+                this.nextSetBit(0),
+                i -> i >= 0,
+                i -> i == Integer.MAX_VALUE ? -1 : this.nextSetBit(i + 1)
+        );
+    }
+
     @Override
     public int hashCode() {
-        final BitwiseModifiableMemory<Long> mem = this.memory.get();
+        final LongModifiableMemory mem = this.memory.get();
         long h = 1234;
         for (int i = mem.length(); --i >= 0; ) {
-            h ^= mem.fetch(i) * (i + 1);
+            h ^= mem.fetchLong(i) * (i + 1);
         }
         return Long.hashCode(h);
     }
 
+    // each operation returns the change of the cardinality
+    private enum Algebra {
+        OR {
+            @Override
+            long apply(final LongModifiableMemory dst, final int index, final long w) {
+                if (w == 0) {
+                    return 0;
+                }
+                final long prev = dst.fetchAndBitwiseOrLong(index, w);
+                return Long.bitCount(w & ~prev);
+            }
+        },
+        AND {
+            @Override
+            long apply(final LongModifiableMemory dst, final int index, final long w) {
+                if ((dst.fetchLong(index) & ~w) == 0) {
+                    return 0;
+                }
+                final long prev = dst.fetchAndBitwiseAndLong(index, w);
+                return -Long.bitCount(prev & ~w);
+            }
+        },
+        AND_NOT {
+            @Override
+            long apply(final LongModifiableMemory dst, final int index, final long w) {
+                if (w == 0) {
+                    return 0;
+                }
+                final long prev = dst.fetchAndBitwiseAndLong(index, ~w);
+                return -Long.bitCount(prev & w);
+            }
+        },
+        XOR {
+            @Override
+            long apply(final LongModifiableMemory dst, final int index, final long w) {
+                if (w == 0) {
+                    return 0;
+                }
+                final long prev = dst.fetchAndBitwiseXorLong(index, w);
+                return Long.bitCount(prev ^ w) - Long.bitCount(prev);
+            }
+        };
+
+        abstract long apply(LongModifiableMemory dst, int index, long w);
+
+        boolean grows() {
+            return this == OR || this == XOR;
+        }
+
+        // words past the source are zero
+        long apply(final LongModifiableMemory dst,
+                   final LongModifiableMemory src,
+                   final int from,
+                   final int to) {
+            final int n = src.length();
+            long delta = 0;
+            for (int i = from; i < to; ++i) {
+                delta += this.apply(dst, i, i < n ? src.fetchLong(i) : 0L);
+            }
+            return delta;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Combine extends RecursiveAction {
+        private final LongModifiableMemory dst, src;
+        private final Algebra op;
+        private final LongAdder counter;
+        private final int from, to;
+
+        private Combine(final LongModifiableMemory dst,
+                        final LongModifiableMemory src,
+                        final Algebra op,
+                        final LongAdder counter,
+                        final int from,
+                        final int to) {
+            this.dst = dst;
+            this.src = src;
+            this.op = op;
+            this.counter = counter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= PARALLEL_THRESHOLD) {
+                this.counter.add(this.op.apply(this.dst, this.src, this.from, this.to));
+            } else {
+                final int mid = (this.from + this.to) >>> 1;
+                invokeAll(
+                        new Combine(this.dst, this.src, this.op, this.counter, this.from, mid),
+                        new Combine(this.dst, this.src, this.op, this.counter, mid, this.to)
+                );
+            }
+        }
+    }
+
     private record CursorImpl(
             ConcurrentBitSet bitSet,
             int nextSetBit
@@ -146,7 +439,8 @@ public final class ConcurrentBitSet extends AbstractSet<Integer> implements Set<
             if (p < 0) {
                 throw new IllegalStateException();
             }
-            return new CursorImpl(this.bitSet, this.bitSet.nextSetBit(p + 1));
+            return new CursorImpl(this.bitSet,
+                    p == Integer.MAX_VALUE ? -1 : this.bitSet.nextSetBit(p + 1));
         }
 
         @Override
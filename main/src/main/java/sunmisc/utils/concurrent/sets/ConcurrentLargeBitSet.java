@@ -0,0 +1,108 @@
+package sunmisc.utils.concurrent.sets;
+
+import sunmisc.utils.concurrent.memory.LongModifiableMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bitset addressed by {@code long} bit indices. Words are still indexed
+ * by {@code int}, which covers up to {@code 2^36} bits.
+ */
+public final class ConcurrentLargeBitSet {
+    private static final int ADDRESS_BITS_PER_CELL
+            = Integer.numberOfTrailingZeros(Long.SIZE);
+    private static final int BITS_PER_CELL =
+            1 << ADDRESS_BITS_PER_CELL;
+    private static final long MAX_BITS = (long) BITS_PER_CELL << 30;
+    private final AtomicReference<LongModifiableMemory> memory;
+
+    public ConcurrentLargeBitSet() {
+        this(new LongSegmentsMemory(4));
+    }
+
+    public ConcurrentLargeBitSet(final LongModifiableMemory memory) {
+        this.memory = new AtomicReference<>(memory);
+    }
+
+    public boolean set(final long bitIndex) {
+        final int index = cellIndex(bitIndex);
+        LongModifiableMemory mem = this.memory.get();
+        if (mem.length() <= index) {
+            mem = this.memory.updateAndGet(old ->
+                    old.length() <= index ? old.realloc(index + 1) : old
+            );
+        }
+        final long mask = 1L << bitIndex;
+        return (mem.fetchAndBitwiseOrLong(index, mask) & mask) == 0;
+    }
+
+    public boolean clear(final long bitIndex) {
+        final int index = cellIndex(bitIndex);
+        final LongModifiableMemory mem = this.memory.get();
+        if (index < mem.length()) {
+            final long mask = 1L << bitIndex;
+            return (mem.fetchAndBitwiseAndLong(index, ~mask) & mask) != 0;
+        }
+        return false;
+    }
+
+    public boolean get(final long bitIndex) {
+        final int index = cellIndex(bitIndex);
+        final LongModifiableMemory mem = this.memory.get();
+        return index < mem.length() && (mem.fetchLong(index) & (1L << bitIndex)) != 0;
+    }
+
+    public long nextSetBit(final long fromIndex) {
+        int u = cellIndex(fromIndex);
+        final LongModifiableMemory mem = this.memory.get();
+        final int n = mem.length();
+        if (u >= n) {
+            return -1;
+        }
+        for (long word = mem.fetchLong(u) & (-1L << fromIndex);;) {
+            if (word != 0) {
+                return ((long) u * BITS_PER_CELL) + Long.numberOfTrailingZeros(word);
+            } else if (++u >= n) {
+                return -1;
+            }
+            word = mem.fetchLong(u);
+        }
+    }
+
+    public long cardinality() {
+        final LongModifiableMemory mem = this.memory.get();
+        long sum = 0;
+        for (int i = 0, n = mem.length(); i < n; ++i) {
+            sum += Long.bitCount(mem.fetchLong(i));
+        }
+        return sum;
+    }
+
+    public boolean isEmpty() {
+        return this.nextSetBit(0) < 0;
+    }
+
+    private static int cellIndex(final long bitIndex) {
+        if (bitIndex < 0 || bitIndex >= MAX_BITS) {
+            throw new IndexOutOfBoundsException(
+                    "bitIndex out of [0, " + MAX_BITS + "): " + bitIndex);
+        }
+        return (int) (bitIndex >>> ADDRESS_BITS_PER_CELL);
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(
+                ", ",
+                "[", "]");
+        for (long i = this.nextSetBit(0); i >= 0; i = this.nextSetBit(i + 1)) {
+            joiner.add(Long.toString(i));
+            if (i + 1 == MAX_BITS) {
+                break;
+            }
+        }
+        return joiner.toString();
+    }
+}
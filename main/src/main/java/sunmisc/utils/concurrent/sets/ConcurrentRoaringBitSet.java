@@ -0,0 +1,627 @@
+package sunmisc.utils.concurrent.sets;
+
+import sunmisc.utils.Cursor;
+import sunmisc.utils.concurrent.memory.GrowableMemory;
+import sunmisc.utils.concurrent.memory.LongModifiableMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compressed bitset in the manner of Roaring bitmaps: the high 16 bits
+ * of a value select a container for its chunk of {@code 2^16} values,
+ * kept as a sorted array while it holds at most {@code 4096} values,
+ * as a bitmap above that, or as runs after {@link #runOptimize()}.
+ * <p>
+ * Array and run containers are immutable and replaced with a CAS,
+ * a bitmap container is updated in place with atomic word operations.
+ * A bitmap that drops to half the array limit is frozen once no writer
+ * is inside it and replaced by its compact form; a writer finding a
+ * frozen bitmap helps with the replacement and retries, so no update
+ * to a bitmap can be lost in a swap.
+ */
+public final class ConcurrentRoaringBitSet extends AbstractSet<Integer> implements Set<Integer> {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int WORDS = (1 << CHUNK_SHIFT) / Long.SIZE;
+    private static final int MAX_ARRAY = 4096;
+    private final GrowableMemory<Container> containers = new GrowableMemory<>(1);
+
+    @Override
+    public boolean add(final Integer value) {
+        if (value < 0) {
+            throw new IndexOutOfBoundsException(value);
+        }
+        final int key = value >>> CHUNK_SHIFT;
+        final int low = value & CHUNK_MASK;
+        this.containers.ensureCapacity(key + 1);
+        for (;;) {
+            final Container c = this.containers.fetch(key);
+            if (c instanceof final Bitmap bitmap) {
+                if (bitmap.enter()) {
+                    try {
+                        return bitmap.add(low);
+                    } finally {
+                        bitmap.exit();
+                    }
+                }
+                this.settle(key, bitmap);
+                continue;
+            } else if (c != null && c.contains(low)) {
+                return false;
+            }
+            final Container added = c == null
+                    ? new Values(new char[]{(char) low})
+                    : c.with(low);
+            if (this.containers.compareAndStore(key, c, added)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        final int value = (int) o;
+        final int key = value >>> CHUNK_SHIFT;
+        final int low = value & CHUNK_MASK;
+        if (value < 0 || key >= this.containers.length()) {
+            return false;
+        }
+        for (;;) {
+            final Container c = this.containers.fetch(key);
+            if (c instanceof final Bitmap bitmap) {
+                if (bitmap.enter()) {
+                    final boolean removed;
+                    try {
+                        removed = bitmap.remove(low);
+                    } finally {
+                        bitmap.exit();
+                    }
+                    this.shrink(key, bitmap);
+                    return removed;
+                }
+                this.settle(key, bitmap);
+                continue;
+            } else if (c == null || !c.contains(low)) {
+                return false;
+            }
+            if (this.containers.compareAndStore(key, c, c.without(low))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        final int value = (int) o;
+        final int key = value >>> CHUNK_SHIFT;
+        if (value < 0 || key >= this.containers.length()) {
+            return false;
+        }
+        final Container c = this.containers.fetch(key);
+        return c != null && c.contains(value & CHUNK_MASK);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int key = 0, n = this.containers.length(); key < n; ++key) {
+            final Container c = this.containers.fetch(key);
+            if (c != null) {
+                size += c.cardinality();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.nextSetBit(0) < 0;
+    }
+
+    // every chunk is dropped, a bitmap with a writer inside is cleared in place
+    @Override
+    public void clear() {
+        for (int key = 0, n = this.containers.length(); key < n; ++key) {
+            for (;;) {
+                final Container c = this.containers.fetch(key);
+                if (c == null) {
+                    break;
+                } else if (c instanceof final Bitmap bitmap && !bitmap.freeze()) {
+                    if (bitmap.enter()) {
+                        try {
+                            bitmap.clear();
+                        } finally {
+                            bitmap.exit();
+                        }
+                        this.shrink(key, bitmap);
+                        break;
+                    }
+                    this.settle(key, bitmap);
+                } else if (this.containers.compareAndStore(key, c, null)) {
+                    // a frozen bitmap takes nothing more, so it can be dropped
+                    break;
+                }
+            }
+        }
+    }
+
+    // union in place, chunk by chunk
+    public void or(final ConcurrentRoaringBitSet other) {
+        final GrowableMemory<Container> src = other.containers;
+        this.containers.ensureCapacity(src.length());
+        for (int key = 0, n = src.length(); key < n; ++key) {
+            final Container o = src.fetch(key);
+            if (o == null) {
+                continue;
+            }
+            final long[] union = o.words();
+            for (;;) {
+                final Container c = this.containers.fetch(key);
+                if (c instanceof final Bitmap bitmap) {
+                    if (bitmap.enter()) {
+                        try {
+                            bitmap.or(union);
+                        } finally {
+                            bitmap.exit();
+                        }
+                        break;
+                    }
+                    this.settle(key, bitmap);
+                    continue;
+                }
+                final long[] words = union.clone();
+                if (c != null) {
+                    final long[] own = c.words();
+                    for (int i = 0; i < WORDS; ++i) {
+                        words[i] |= own[i];
+                    }
+                }
+                if (this.containers.compareAndStore(key, c, Container.of(words))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // intersection in place, chunk by chunk
+    public void and(final ConcurrentRoaringBitSet other) {
+        final GrowableMemory<Container> src = other.containers;
+        for (int key = 0, n = this.containers.length(); key < n; ++key) {
+            final Container o = key < src.length() ? src.fetch(key) : null;
+            final long[] mask = o == null ? new long[WORDS] : o.words();
+            for (;;) {
+                final Container c = this.containers.fetch(key);
+                if (c == null) {
+                    break;
+                } else if (c instanceof final Bitmap bitmap) {
+                    if (bitmap.enter()) {
+                        try {
+                            bitmap.and(mask);
+                        } finally {
+                            bitmap.exit();
+                        }
+                        this.shrink(key, bitmap);
+                        break;
+                    }
+                    this.settle(key, bitmap);
+                    continue;
+                }
+                final long[] words = c.words();
+                for (int i = 0; i < WORDS; ++i) {
+                    words[i] &= mask[i];
+                }
+                if (this.containers.compareAndStore(key, c, Container.of(words))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // array containers that are cheaper as runs are replaced by runs
+    public void runOptimize() {
+        for (int key = 0, n = this.containers.length(); key < n; ++key) {
+            final Container c = this.containers.fetch(key);
+            if (c instanceof final Values values) {
+                final Runs runs = Runs.of(values.words());
+                if (runs.runs.length < values.values.length) {
+                    this.containers.compareAndStore(key, c, runs);
+                }
+            }
+        }
+    }
+
+    // a frozen bitmap no longer changes and is replaced by its compact form
+    private void settle(final int key, final Bitmap bitmap) {
+        final long[] words = bitmap.words();
+        Container compact = Container.of(words);
+        if (compact instanceof final Values values) {
+            final Runs runs = Runs.of(words);
+            if (runs.runs.length < values.values.length) {
+                compact = runs;
+            }
+        }
+        this.containers.compareAndStore(key, bitmap, compact);
+    }
+
+    // freezing fails while a writer is inside, the next one retries
+    private void shrink(final int key, final Bitmap bitmap) {
+        if (bitmap.cardinality() <= MAX_ARRAY >>> 1 && bitmap.freeze()) {
+            this.settle(key, bitmap);
+        }
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        final int i = this.nextSetBit(0);
+        return new Cursor.CursorAsIterator<>(i < 0
+                ? Cursor.empty()
+                : new CursorImpl(this, i)
+        );
+    }
+
+    private int nextSetBit(final int fromIndex) {
+        for (int key = fromIndex >>> CHUNK_SHIFT, low = fromIndex & CHUNK_MASK,
+             n = this.containers.length(); key < n; ++key, low = 0) {
+            final Container c = this.containers.fetch(key);
+            final int next = c == null ? -1 : c.next(low);
+            if (next >= 0) {
+                return key << CHUNK_SHIFT | next;
+            }
+        }
+        return -1;
+    }
+
+    private sealed interface Container permits Values, Runs, Bitmap {
+
+        boolean contains(int low);
+
+        // the least value not below low, or -1
+        int next(int low);
+
+        int cardinality();
+
+        // a fresh copy of the chunk as 1024 words
+        long[] words();
+
+        default Container with(final int low) {
+            final long[] words = this.words();
+            words[low >>> 6] |= 1L << low;
+            return of(words);
+        }
+
+        default Container without(final int low) {
+            final long[] words = this.words();
+            words[low >>> 6] &= ~(1L << low);
+            return of(words);
+        }
+
+        static Container of(final long[] words) {
+            int cardinality = 0;
+            for (final long w : words) {
+                cardinality += Long.bitCount(w);
+            }
+            if (cardinality == 0) {
+                return null;
+            } else if (cardinality > MAX_ARRAY) {
+                return new Bitmap(words);
+            }
+            final char[] values = new char[cardinality];
+            for (int i = 0, k = 0; i < WORDS; ++i) {
+                for (long w = words[i]; w != 0; w &= w - 1) {
+                    values[k++] = (char) (i << 6 | Long.numberOfTrailingZeros(w));
+                }
+            }
+            return new Values(values);
+        }
+    }
+
+    // sorted values, at most 4096 of them
+    private record Values(char[] values) implements Container {
+
+        @Override
+        public boolean contains(final int low) {
+            return Arrays.binarySearch(this.values, (char) low) >= 0;
+        }
+
+        @Override
+        public int next(final int low) {
+            final int i = Arrays.binarySearch(this.values, (char) low);
+            final int at = i >= 0 ? i : -i - 1;
+            return at < this.values.length ? this.values[at] : -1;
+        }
+
+        @Override
+        public int cardinality() {
+            return this.values.length;
+        }
+
+        @Override
+        public Container with(final int low) {
+            final int i = Arrays.binarySearch(this.values, (char) low);
+            if (i >= 0) {
+                return this;
+            } else if (this.values.length >= MAX_ARRAY) {
+                return Container.super.with(low);
+            }
+            final int at = -i - 1;
+            final char[] copy = new char[this.values.length + 1];
+            System.arraycopy(this.values, 0, copy, 0, at);
+            copy[at] = (char) low;
+            System.arraycopy(this.values, at, copy, at + 1, this.values.length - at);
+            return new Values(copy);
+        }
+
+        @Override
+        public Container without(final int low) {
+            final int at = Arrays.binarySearch(this.values, (char) low);
+            if (at < 0) {
+                return this;
+            } else if (this.values.length == 1) {
+                return null;
+            }
+            final char[] copy = new char[this.values.length - 1];
+            System.arraycopy(this.values, 0, copy, 0, at);
+            System.arraycopy(this.values, at + 1, copy, at, copy.length - at);
+            return new Values(copy);
+        }
+
+        @Override
+        public long[] words() {
+            final long[] words = new long[WORDS];
+            for (final char v : this.values) {
+                words[v >>> 6] |= 1L << v;
+            }
+            return words;
+        }
+    }
+
+    // pairs of a run start and its length minus one
+    private record Runs(char[] runs) implements Container {
+
+        static Runs of(final long[] words) {
+            final char[] runs = new char[WORDS << 6];
+            int k = 0;
+            for (int v = nextSet(words, 0); v >= 0; ) {
+                final int end = nextClear(words, v);
+                runs[k++] = (char) v;
+                runs[k++] = (char) (end - v - 1);
+                v = end < (WORDS << 6) ? nextSet(words, end) : -1;
+            }
+            return new Runs(Arrays.copyOf(runs, k));
+        }
+
+        @Override
+        public boolean contains(final int low) {
+            final int r = this.runFor(low);
+            return r >= 0 && low <= this.runs[r] + this.runs[r + 1];
+        }
+
+        @Override
+        public int next(final int low) {
+            final int r = this.runFor(low);
+            if (r >= 0 && low <= this.runs[r] + this.runs[r + 1]) {
+                return low;
+            }
+            final int following = r + 2;
+            return following < this.runs.length ? this.runs[following] : -1;
+        }
+
+        @Override
+        public int cardinality() {
+            int cardinality = 0;
+            for (int r = 0; r < this.runs.length; r += 2) {
+                cardinality += this.runs[r + 1] + 1;
+            }
+            return cardinality;
+        }
+
+        @Override
+        public long[] words() {
+            final long[] words = new long[WORDS];
+            for (int r = 0; r < this.runs.length; r += 2) {
+                for (int v = this.runs[r], end = v + this.runs[r + 1]; v <= end; ++v) {
+                    words[v >>> 6] |= 1L << v;
+                }
+            }
+            return words;
+        }
+
+        // the offset of the last run starting at or before low, or -2
+        private int runFor(final int low) {
+            int lo = 0, hi = (this.runs.length >>> 1) - 1, found = -1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.runs[mid << 1] <= low) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found << 1;
+        }
+
+        private static int nextSet(final long[] words, final int from) {
+            int u = from >>> 6;
+            for (long w = words[u] & (-1L << from); ; w = words[u]) {
+                if (w != 0) {
+                    return u << 6 | Long.numberOfTrailingZeros(w);
+                } else if (++u == WORDS) {
+                    return -1;
+                }
+            }
+        }
+
+        private static int nextClear(final long[] words, final int from) {
+            int u = from >>> 6;
+            for (long w = ~words[u] & (-1L << from); ; w = ~words[u]) {
+                if (w != 0) {
+                    return u << 6 | Long.numberOfTrailingZeros(w);
+                } else if (++u == WORDS) {
+                    return WORDS << 6;
+                }
+            }
+        }
+    }
+
+    private static final class Bitmap implements Container {
+        private static final int FROZEN = Integer.MIN_VALUE;
+        private final LongModifiableMemory words;
+        // writers inside the bitmap, negative once it is frozen
+        private final AtomicInteger writers = new AtomicInteger();
+        private final AtomicInteger cardinality = new AtomicInteger();
+
+        private Bitmap(final long[] words) {
+            this.words = new LongSegmentsMemory(WORDS);
+            this.words.copyFrom(words, 0, 0, WORDS);
+            int cardinality = 0;
+            for (final long w : words) {
+                cardinality += Long.bitCount(w);
+            }
+            this.cardinality.set(cardinality);
+        }
+
+        // false if the bitmap is frozen and must be replaced first
+        boolean enter() {
+            for (int s = this.writers.get(); s >= 0; ) {
+                if (s == (s = this.writers.compareAndExchange(s, s + 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void exit() {
+            this.writers.decrementAndGet();
+        }
+
+        // the words never change once this succeeds
+        boolean freeze() {
+            return this.writers.compareAndSet(0, FROZEN);
+        }
+
+        boolean add(final int low) {
+            final long mask = 1L << low;
+            if ((this.words.fetchAndBitwiseOrLong(low >>> 6, mask) & mask) == 0) {
+                this.cardinality.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        boolean remove(final int low) {
+            final long mask = 1L << low;
+            if ((this.words.fetchAndBitwiseAndLong(low >>> 6, ~mask) & mask) != 0) {
+                this.cardinality.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void or(final long[] src) {
+            int delta = 0;
+            for (int i = 0; i < WORDS; ++i) {
+                final long w = src[i];
+                if (w != 0) {
+                    delta += Long.bitCount(w & ~this.words.fetchAndBitwiseOrLong(i, w));
+                }
+            }
+            this.cardinality.addAndGet(delta);
+        }
+
+        void and(final long[] mask) {
+            int delta = 0;
+            for (int i = 0; i < WORDS; ++i) {
+                final long w = mask[i];
+                if ((this.words.fetchLong(i) & ~w) != 0) {
+                    delta += Long.bitCount(this.words.fetchAndBitwiseAndLong(i, w) & ~w);
+                }
+            }
+            this.cardinality.addAndGet(-delta);
+        }
+
+        void clear() {
+            int delta = 0;
+            for (int i = 0; i < WORDS; ++i) {
+                if (this.words.fetchLong(i) != 0) {
+                    delta += Long.bitCount(this.words.fetchAndStoreLong(i, 0L));
+                }
+            }
+            this.cardinality.addAndGet(-delta);
+        }
+
+        @Override
+        public boolean contains(final int low) {
+            return (this.words.fetchLong(low >>> 6) & (1L << low)) != 0;
+        }
+
+        @Override
+        public int next(final int low) {
+            int u = low >>> 6;
+            for (long w = this.words.fetchLong(u) & (-1L << low); ; ) {
+                if (w != 0) {
+                    return u << 6 | Long.numberOfTrailingZeros(w);
+                } else if (++u == WORDS) {
+                    return -1;
+                }
+                w = this.words.fetchLong(u);
+            }
+        }
+
+        @Override
+        public int cardinality() {
+            return this.cardinality.get();
+        }
+
+        @Override
+        public long[] words() {
+            final long[] words = new long[WORDS];
+            this.words.copyTo(0, words, 0, WORDS);
+            return words;
+        }
+    }
+
+    private record CursorImpl(
+            ConcurrentRoaringBitSet bitSet,
+            int nextSetBit
+    ) implements Cursor<Integer> {
+
+        @Override
+        public boolean exists() {
+            return this.nextSetBit >= 0;
+        }
+
+        @Override
+        public Cursor<Integer> next() {
+            final int p = this.nextSetBit;
+            if (p < 0) {
+                throw new IllegalStateException();
+            }
+            return new CursorImpl(this.bitSet,
+                    p == Integer.MAX_VALUE ? -1 : this.bitSet.nextSetBit(p + 1));
+        }
+
+        @Override
+        public Integer element() {
+            final int p = this.nextSetBit;
+            if (p < 0) {
+                throw new IllegalStateException();
+            }
+            return p;
+        }
+
+        @Override
+        public void remove() {
+            final int p = this.nextSetBit;
+            if (p < 0) {
+                throw new IllegalStateException();
+            }
+            this.bitSet.remove(p);
+        }
+    }
+}
@@ -3,13 +3,24 @@ package me.sunmisc.concurrent;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sunmisc.utils.concurrent.memory.MappedLongMemory;
 import sunmisc.utils.concurrent.sets.ConcurrentBitSet;
+import sunmisc.utils.concurrent.sets.ConcurrentLargeBitSet;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
 
 public class ConcurrentBitSetTest {
     private ConcurrentBitSet bits;
@@ -60,4 +71,158 @@ public class ConcurrentBitSetTest {
                 "Collections should match"
         );
     }
+
+    @Test
+    public void primitiveBits() {
+        final ConcurrentBitSet set = new ConcurrentBitSet();
+        final BitSet expected = new BitSet();
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < 1 << 12; ++a) {
+                final int bit = ThreadLocalRandom.current().nextInt(0, 1 << 16);
+                expected.set(bit);
+                executor.execute(() -> set.set(bit));
+            }
+        }
+        final List<Integer> visited = new ArrayList<>();
+        set.forEachSetBit(visited::add);
+        Assertions.assertEquals(expected.stream().boxed().toList(), visited);
+        Assertions.assertEquals(expected.stream().boxed().toList(),
+                set.intStream().boxed().toList());
+        for (int i = 0; i < 1 << 16; i += 7) {
+            Assertions.assertEquals(expected.get(i), set.get(i));
+            Assertions.assertEquals(expected.nextSetBit(i), set.nextSetBit(i));
+            Assertions.assertEquals(expected.nextClearBit(i), set.nextClearBit(i));
+        }
+        Assertions.assertEquals(-1, set.nextSetBit(Integer.MAX_VALUE));
+        Assertions.assertEquals(Integer.MAX_VALUE, set.nextClearBit(Integer.MAX_VALUE));
+        Assertions.assertFalse(set.clear(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void lastBitOfWord() {
+        final ConcurrentBitSet set = new ConcurrentBitSet();
+        set.set(127);
+        Assertions.assertEquals(List.of(127), set.intStream().boxed().toList());
+        Assertions.assertEquals(Set.of(127), new HashSet<>(set));
+        Assertions.assertTrue(set.clear(127));
+        Assertions.assertEquals(-1, set.nextSetBit(0));
+    }
+
+    @Test
+    public void countBits() {
+        final ConcurrentBitSet set = new ConcurrentBitSet();
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < 1 << 14; ++a) {
+                executor.execute(() -> {
+                    final int bit = ThreadLocalRandom.current().nextInt(0, 1 << 12);
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        set.set(bit);
+                    } else {
+                        set.clear(bit);
+                    }
+                });
+            }
+        }
+        Assertions.assertEquals(set.intStream().count(), set.size());
+        set.clear();
+        Assertions.assertTrue(set.isEmpty());
+        Assertions.assertEquals(-1, set.nextSetBit(0));
+    }
+
+    @Test
+    public void combineSets() {
+        final int bits = 1 << 20;
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final BitSet a = new BitSet(), b = new BitSet();
+        for (int i = 0; i < 1 << 14; ++i) {
+            a.set(random.nextInt(0, bits));
+            b.set(random.nextInt(0, bits >>> 1));
+        }
+        final List<BiConsumer<BitSet, BitSet>> expected = List.of(
+                BitSet::or, BitSet::and, BitSet::andNot, BitSet::xor);
+        final List<BiConsumer<ConcurrentBitSet, ConcurrentBitSet>> actual = List.of(
+                ConcurrentBitSet::or, ConcurrentBitSet::and,
+                ConcurrentBitSet::andNot, ConcurrentBitSet::xor,
+                ConcurrentBitSet::parallelOr, ConcurrentBitSet::parallelAnd,
+                ConcurrentBitSet::parallelAndNot, ConcurrentBitSet::parallelXor);
+        for (int k = 0; k < actual.size(); ++k) {
+            // b into a and a into b, so that both grow and shrink are covered
+            for (final boolean swap : new boolean[] {false, true}) {
+                final BitSet x = (BitSet) (swap ? b : a).clone();
+                final ConcurrentBitSet dst = new ConcurrentBitSet();
+                final ConcurrentBitSet src = new ConcurrentBitSet();
+                x.stream().forEach(dst::set);
+                (swap ? a : b).stream().forEach(src::set);
+                Assertions.assertEquals(x.intersects(swap ? a : b), dst.intersects(src));
+                expected.get(k % expected.size()).accept(x, swap ? a : b);
+                actual.get(k).accept(dst, src);
+                Assertions.assertEquals(x.stream().boxed().toList(),
+                        dst.intStream().boxed().toList());
+                Assertions.assertEquals(x.cardinality(), dst.size());
+            }
+        }
+    }
+
+    @Test
+    public void rangeBits() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final BitSet expected = new BitSet();
+        final ConcurrentBitSet set = new ConcurrentBitSet();
+        for (int k = 0; k < 1 << 10; ++k) {
+            final int from = random.nextInt(0, 1 << 14);
+            final int to = from + random.nextInt(0, 1 << 9);
+            switch (k % 3) {
+                case 0 -> {
+                    expected.set(from, to);
+                    set.set(from, to);
+                }
+                case 1 -> {
+                    expected.clear(from, to);
+                    set.clear(from, to);
+                }
+                default -> {
+                    expected.flip(from, to);
+                    set.flip(from, to);
+                }
+            }
+        }
+        Assertions.assertEquals(expected.stream().boxed().toList(),
+                set.intStream().boxed().toList());
+        Assertions.assertEquals(expected.cardinality(), set.size());
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> set.set(2, 1));
+    }
+
+    @Test
+    public void largeBits(@TempDir final Path dir) throws IOException {
+        // a sparse file, so that words past 2^25 cost no heap
+        try (final MappedLongMemory memory = new MappedLongMemory(dir.resolve("bits"), 2)) {
+            final ConcurrentLargeBitSet set = new ConcurrentLargeBitSet(memory);
+            final long edge = Integer.MAX_VALUE + 1L;
+            // the last word of one segment of the memory and the first of the next
+            final List<Long> bits = List.of(3L, edge - 3, edge + 70, edge << 1);
+            for (final long bit : bits) {
+                Assertions.assertTrue(set.set(bit));
+                Assertions.assertFalse(set.set(bit));
+            }
+            for (final long bit : bits) {
+                Assertions.assertTrue(set.get(bit));
+                Assertions.assertFalse(set.get(bit + 1));
+            }
+            Assertions.assertEquals(edge + 70, set.nextSetBit(edge - 2));
+            Assertions.assertEquals(edge << 1, set.nextSetBit(edge + 71));
+            Assertions.assertEquals(-1, set.nextSetBit((edge << 1) + 1));
+            Assertions.assertEquals(bits.size(), set.cardinality());
+            Assertions.assertTrue(set.clear(edge + 70));
+            Assertions.assertFalse(set.clear(edge + 70));
+            Assertions.assertFalse(set.get(edge + 70));
+            Assertions.assertEquals(edge << 1, set.nextSetBit(edge - 2));
+            Assertions.assertEquals(bits.size() - 1, set.cardinality());
+            Assertions.assertFalse(set.isEmpty());
+            final long max = 1L << 36;
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> set.set(max));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> set.get(max));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> set.clear(-1L));
+            Assertions.assertFalse(set.get(max - 1));
+        }
+    }
 }
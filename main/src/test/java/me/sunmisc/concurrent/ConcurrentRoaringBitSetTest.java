@@ -0,0 +1,149 @@
+package me.sunmisc.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sunmisc.utils.concurrent.sets.ConcurrentRoaringBitSet;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+public class ConcurrentRoaringBitSetTest {
+    private ConcurrentRoaringBitSet bits;
+    private Set<Integer> hash;
+
+    @BeforeEach
+    public void setup() {
+        this.bits = new ConcurrentRoaringBitSet();
+        this.hash = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 16; ++i) {
+            this.bits.add(i);
+            this.hash.add(i);
+        }
+    }
+
+    @Test
+    public void insertSparseBit() {
+        final int size = 1 << 14;
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < size; ++a) {
+                executor.execute(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    // a few dense chunks turn into bitmaps, the rest stay arrays
+                    final int delta = random.nextBoolean()
+                            ? random.nextInt(0, Integer.MAX_VALUE)
+                            : random.nextInt(0, 1 << 17);
+                    this.bits.add(delta);
+                    this.hash.add(delta);
+                });
+            }
+        }
+        Assertions.assertEquals(
+                this.hash,
+                this.bits,
+                "Collections should match"
+        );
+        Assertions.assertEquals(
+                this.hash.size(),
+                this.bits.size(),
+                "Cardinality should match"
+        );
+    }
+
+    @Test
+    public void deleteBit() {
+        IntStream.range(0, 1 << 13).forEach(i -> {
+            this.bits.add(i << 3);
+            this.hash.add(i << 3);
+        });
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (final int index : this.hash) {
+                if ((index & 1) == 0) {
+                    executor.execute(() -> {
+                        this.bits.remove(index);
+                        this.hash.remove(index);
+                    });
+                }
+            }
+        }
+        Assertions.assertEquals(
+                this.hash,
+                this.bits,
+                "Collections should match"
+        );
+    }
+
+    @Test
+    public void combineBits() {
+        final ConcurrentRoaringBitSet other = new ConcurrentRoaringBitSet();
+        IntStream.range(0, 1 << 14).forEach(i -> other.add(i * 7));
+        IntStream.range(1 << 20, (1 << 20) + 100).forEach(other::add);
+        final Set<Integer> union = new HashSet<>(this.hash);
+        union.addAll(other);
+        this.bits.or(other);
+        Assertions.assertEquals(union, this.bits, "Union should match");
+
+        final ConcurrentRoaringBitSet odd = new ConcurrentRoaringBitSet();
+        IntStream.range(0, 1 << 17).filter(i -> (i & 1) == 1).forEach(odd::add);
+        union.removeIf(x -> (x & 1) == 0 || x >= 1 << 17);
+        this.bits.and(odd);
+        Assertions.assertEquals(union, this.bits, "Intersection should match");
+
+        this.bits.runOptimize();
+        other.runOptimize();
+        Assertions.assertEquals(union, this.bits, "Runs should keep the values");
+        Assertions.assertTrue(other.contains((1 << 20) + 99), "Runs should keep the values");
+        Assertions.assertFalse(other.contains((1 << 20) + 100), "Runs should keep the values");
+    }
+
+    @Test
+    public void shrinkDenseChunk() {
+        // one chunk well above the array limit, then mostly removed
+        IntStream.range(0, 1 << 14).forEach(i -> {
+            this.bits.add(i);
+            this.hash.add(i);
+        });
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int i = 0; i < 1 << 14; ++i) {
+                final int index = i;
+                executor.execute(() -> {
+                    if ((index & 15) != 0) {
+                        this.bits.remove(index);
+                        this.hash.remove(index);
+                    }
+                    // writers racing with the downgrade of the chunk
+                    final int added = (1 << 14) + index;
+                    if ((index & 7) == 0) {
+                        this.bits.add(added);
+                        this.hash.add(added);
+                    }
+                });
+            }
+        }
+        Assertions.assertEquals(this.hash, this.bits, "Collections should match");
+        Assertions.assertEquals(this.hash.size(), this.bits.size(), "Cardinality should match");
+    }
+
+    @Test
+    public void clearWithWriters() {
+        IntStream.range(0, 1 << 13).forEach(i -> this.bits.add(i * 3));
+        final Set<Integer> before = new HashSet<>(this.bits);
+        // the setup values that the writers add again
+        before.removeIf(x -> x % 3 == 1);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int i = 0; i < 1 << 12; ++i) {
+                final int index = i;
+                // appended values turn the array chunks into bitmaps meanwhile
+                executor.execute(() -> this.bits.add(index * 3 + 1));
+            }
+            this.bits.clear();
+        }
+        before.forEach(x -> Assertions.assertFalse(
+                this.bits.contains(x), "A value from before clear survived"));
+    }
+}
@@ -2,15 +2,46 @@ package me.sunmisc.concurrent;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.MatcherAssert;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import sunmisc.utils.concurrent.memory.ArrayMemory;
+import sunmisc.utils.concurrent.memory.BitwiseSegmentsMemory;
+import sunmisc.utils.concurrent.memory.CombiningMemory;
+import sunmisc.utils.concurrent.memory.DoubleModifiableMemory;
+import sunmisc.utils.concurrent.memory.DoubleSegmentsMemory;
+import sunmisc.utils.concurrent.memory.FloatModifiableMemory;
+import sunmisc.utils.concurrent.memory.FloatSegmentsMemory;
+import sunmisc.utils.concurrent.memory.GrowableMemory;
+import sunmisc.utils.concurrent.memory.LargeModifiableMemory;
+import sunmisc.utils.concurrent.memory.LargeSegmentsMemory;
+import sunmisc.utils.concurrent.memory.LongModifiableMemory;
+import sunmisc.utils.concurrent.memory.LongSegmentsMemory;
+import sunmisc.utils.concurrent.memory.MappedLongMemory;
 import sunmisc.utils.concurrent.memory.ModifiableMemory;
+import sunmisc.utils.concurrent.memory.MultiCasMemory;
+import sunmisc.utils.concurrent.memory.NativeLongMemory;
+import sunmisc.utils.concurrent.memory.PaddedLongMemory;
+import sunmisc.utils.concurrent.memory.PagedMemory;
+import sunmisc.utils.concurrent.memory.ReadableMemory;
 import sunmisc.utils.concurrent.memory.SegmentsMemory;
+import sunmisc.utils.concurrent.memory.SnapshotMemory;
+import sunmisc.utils.concurrent.memory.SparseMemory;
+import sunmisc.utils.concurrent.memory.StripedCounterMemory;
+import sunmisc.utils.concurrent.memory.TrimPolicy;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Queue;
+import java.util.Spliterator;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -82,4 +113,736 @@ public final class MemoryTest {
             );
         });
     }
+
+    @Test
+    public void addOffHeapMemory() {
+        final int size = 1 << 10;
+        final int count = 1 << 14;
+        final NativeLongMemory origin = new NativeLongMemory(2);
+        try (final NativeLongMemory memory = origin.realloc(size)) {
+            try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+                for (int a = 0; a < count; ++a) {
+                    final int index = a & (size - 1);
+                    executor.execute(() -> memory.fetchAndAdd(index, 1L));
+                }
+            }
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(
+                        String.format("The counter at index %s is lost", index),
+                        memory.fetch(index),
+                        CoreMatchers.equalTo((long) count / size)
+                );
+            }
+        }
+        Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> origin.fetch(0),
+                "Memory must be released with its realloc"
+        );
+    }
+
+    @Test
+    public void addPrimitiveMemory() {
+        final int size = 1 << 10;
+        final int count = 1 << 14;
+        final LongModifiableMemory memory = new LongSegmentsMemory(size);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = a & (size - 1);
+                executor.execute(() -> memory.fetchAndAddLong(index, 1L));
+            }
+        }
+        final LongModifiableMemory grown = memory.realloc(size << 1);
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The counter at index %s is lost", index),
+                    grown.fetchLong(index),
+                    CoreMatchers.equalTo((long) count / size)
+            );
+        }
+        MatcherAssert.assertThat(
+                "Boxed access must see the same cells",
+                grown.compareAndStore(0, (long) count / size, Long.MAX_VALUE),
+                CoreMatchers.is(true)
+        );
+    }
+
+    @Test
+    public void addPaddedMemory() {
+        final int size = 1 << 10;
+        final int count = 1 << 14;
+        final LongModifiableMemory memory = new PaddedLongMemory(size);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = a & (size - 1);
+                executor.execute(() -> memory.fetchAndAddLong(index, index + 1L));
+            }
+        }
+        final LongModifiableMemory grown = memory.realloc(size << 1);
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The counter at index %s is lost", index),
+                    grown.fetchLong(index),
+                    CoreMatchers.equalTo((long) count / size * (index + 1))
+            );
+        }
+        for (int index = size; index < grown.length(); ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The grown cell at index %s must be empty", index),
+                    grown.fetchLong(index),
+                    CoreMatchers.equalTo(0L)
+            );
+        }
+        Assertions.assertThrows(
+                OutOfMemoryError.class,
+                () -> memory.realloc(Integer.MAX_VALUE),
+                "The padded segments must not overflow"
+        );
+    }
+
+    @Test
+    public void reallocLargeMemory() {
+        final long size = 1L << 14;
+        final LargeModifiableMemory<Long> origin = new LargeSegmentsMemory<>(2);
+        for (long index = 0; index < 2; ++index) {
+            origin.store(index, index);
+        }
+        final LargeModifiableMemory<Long> memory = origin.realloc(size);
+        for (long index = 2; index < size; ++index) {
+            memory.store(index, index);
+        }
+        MatcherAssert.assertThat(
+                "The length must be aligned to a power of two",
+                memory.length(),
+                CoreMatchers.equalTo(size)
+        );
+        for (long index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The value at index %s does not match", index),
+                    memory.fetch(index),
+                    CoreMatchers.equalTo(index)
+            );
+        }
+    }
+
+    @Test
+    public void copyMemory() {
+        final int size = 1 << 10;
+        final Integer[] source = new Integer[size];
+        for (int index = 0; index < size; ++index) {
+            source[index] = index;
+        }
+        final ModifiableMemory<Integer> memory = new SegmentsMemory<>(size);
+        memory.copyFrom(source, 0, 0, size);
+        memory.fill(1, 3, -1);
+        final ModifiableMemory<Integer> copy = new SegmentsMemory<>(size);
+        memory.copyTo(0, copy, 0, size);
+        final Integer[] result = new Integer[size];
+        copy.copyTo(0, result, 0, size);
+        source[1] = source[2] = -1;
+        MatcherAssert.assertThat(
+                "The copied elements must match the source",
+                result,
+                CoreMatchers.equalTo(source)
+        );
+        final ModifiableMemory<Integer> array = new ArrayMemory<>(4);
+        final List<Executable> outOfRange = List.of(
+                () -> array.fill(3, 2, 0),
+                () -> array.fill(0, 5, 0),
+                () -> array.copyFrom(source, 0, 2, 3),
+                () -> array.copyFrom(source, size - 1, 0, 2),
+                () -> array.copyTo(2, result, 0, 3),
+                () -> array.copyTo(0, result, size - 1, 2),
+                () -> array.copyTo(0, copy, size - 1, 2)
+        );
+        for (final Executable call : outOfRange) {
+            Assertions.assertThrows(
+                    IndexOutOfBoundsException.class, call,
+                    "A bad range must fail up front"
+            );
+        }
+    }
+
+    @Test
+    public void copyPrimitiveMemory() {
+        final int size = 1 << 10;
+        final long[] source = ThreadLocalRandom.current().longs(size).toArray();
+        final LongModifiableMemory memory = new LongSegmentsMemory(size);
+        memory.copyFrom(source, 0, 0, size);
+        try (final NativeLongMemory copy = new NativeLongMemory(size)) {
+            memory.copyTo(0, copy, 0, size);
+            copy.fillLong(size / 2, size, 7L);
+            final long[] result = new long[size];
+            copy.copyTo(0, result, 0, size);
+            Arrays.fill(source, size / 2, size, 7L);
+            MatcherAssert.assertThat(
+                    "The copied cells must match the source",
+                    result,
+                    CoreMatchers.equalTo(source)
+            );
+        }
+    }
+
+    @Test
+    public void traverseMemory() {
+        final int size = 1 << 10;
+        final ModifiableMemory<Integer> memory = new SegmentsMemory<>(size);
+        for (int index = 0; index < size; ++index) {
+            memory.store(index, index);
+        }
+        memory.forEachIndexed((value, index) -> MatcherAssert.assertThat(
+                String.format("The value at index %s does not match", index),
+                value,
+                CoreMatchers.equalTo(index)
+        ));
+        final Spliterator<Integer> tail = memory.spliterator();
+        final Spliterator<Integer> head = tail.trySplit();
+        final List<Integer> result = new ArrayList<>(size);
+        head.forEachRemaining(result::add);
+        MatcherAssert.assertThat(
+                "The split must follow the last segment",
+                result.size(),
+                CoreMatchers.equalTo(size / 2)
+        );
+        tail.forEachRemaining(result::add);
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The value at index %s is out of order", index),
+                    result.get(index),
+                    CoreMatchers.equalTo(index)
+            );
+        }
+    }
+
+    @Test
+    public void streamMemory() {
+        final int size = 1 << 14;
+        final long[] source = ThreadLocalRandom.current().longs(size).toArray();
+        final LongModifiableMemory memory = new LongSegmentsMemory(size);
+        memory.copyFrom(source, 0, 0, size);
+        MatcherAssert.assertThat(
+                "A parallel popcount must match the sequential one",
+                memory.longStream().parallel().map(Long::bitCount).sum(),
+                CoreMatchers.equalTo(Arrays.stream(source).map(Long::bitCount).sum())
+        );
+        MatcherAssert.assertThat(
+                "A parallel boxed stream must see every element",
+                memory.parallelStream().mapToLong(Long::longValue).sum(),
+                CoreMatchers.equalTo(Arrays.stream(source).sum())
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 32})
+    public void growMemory(final int capacity) {
+        final int size = 1 << 14;
+        final AtomicInteger counted = new AtomicInteger(0);
+        final GrowableMemory<Integer> memory = new GrowableMemory<>(capacity);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < size; ++a) {
+                executor.execute(() -> {
+                    final int inc = counted.getAndIncrement();
+                    memory.ensureCapacity(inc + 1);
+                    memory.store(inc, inc);
+                });
+            }
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The value at index %s is lost", index),
+                    memory.fetch(index),
+                    CoreMatchers.equalTo(index)
+            );
+        }
+    }
+
+    @Test
+    public void addStripedCounters() {
+        final int size = 1 << 4;
+        final int count = 1 << 14;
+        final StripedCounterMemory memory = new StripedCounterMemory(size, 4);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = a & (size - 1);
+                executor.execute(() -> memory.increment(index));
+            }
+        }
+        final StripedCounterMemory grown = memory.realloc(size << 1);
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The counter at index %s is lost", index),
+                    grown.sumThenReset(index),
+                    CoreMatchers.equalTo((long) count / size)
+            );
+        }
+        MatcherAssert.assertThat(
+                "The counters must be reset",
+                grown.stream().mapToLong(Long::longValue).sum(),
+                CoreMatchers.equalTo(0L)
+        );
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                executor.execute(() -> memory.add(1, 2));
+            }
+        }
+        MatcherAssert.assertThat(
+                "Updates through the old memory must reach the grown one",
+                grown.sum(1),
+                CoreMatchers.equalTo(2L * count)
+        );
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                executor.execute(() -> memory.increment(size - 1));
+            }
+        }
+        MatcherAssert.assertThat(
+                "A shrink must narrow the result only",
+                memory.realloc(2).length(),
+                CoreMatchers.equalTo(2)
+        );
+        MatcherAssert.assertThat(
+                "A shrink must leave the counts of the old memory as they were",
+                memory.sum(size - 1),
+                CoreMatchers.equalTo((long) count)
+        );
+    }
+
+    @Test
+    public void persistMappedMemory(@TempDir final Path dir) throws IOException {
+        final int size = 1 << 10;
+        final Path file = dir.resolve("cells");
+        try (final MappedLongMemory memory = new MappedLongMemory(file, 2).realloc(size)) {
+            for (int index = 0; index < size; ++index) {
+                memory.fetchAndBitwiseOrLong(index, index);
+            }
+            memory.force();
+        }
+        MatcherAssert.assertThat(
+                "The file must grow with the memory",
+                Files.size(file),
+                CoreMatchers.equalTo((long) size * Long.BYTES)
+        );
+        try (final MappedLongMemory memory = new MappedLongMemory(file, 2)) {
+            MatcherAssert.assertThat(
+                    "The memory must cover the existing file",
+                    memory.length(),
+                    CoreMatchers.equalTo(size)
+            );
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(
+                        String.format("The cell at index %s is lost", index),
+                        memory.fetchLong(index),
+                        CoreMatchers.equalTo((long) index)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void combineBitwiseMemory() {
+        final int size = 1 << 9;
+        final long[] left = ThreadLocalRandom.current().longs(size).toArray();
+        final long[] right = ThreadLocalRandom.current().longs(size / 2).toArray();
+        final List<LongModifiableMemory> sources = List.of(
+                new LongSegmentsMemory(size / 2),
+                new NativeLongMemory(size / 2)
+        );
+        for (final LongModifiableMemory src : sources) {
+            src.copyFrom(right, 0, 0, right.length);
+            final LongModifiableMemory memory = new LongSegmentsMemory(size);
+            memory.copyFrom(left, 0, 0, size);
+            long or = 0, xor = 0;
+            for (int i = 0; i < size; ++i) {
+                final long w = i < right.length ? right[i] : 0L;
+                or += Long.bitCount(left[i] | w);
+                xor += Long.bitCount(left[i] & ~w);
+            }
+            memory.bitwiseOr(src);
+            MatcherAssert.assertThat(
+                    String.format("Bulk or with %s is lost", src.getClass()),
+                    memory.bitCount(),
+                    CoreMatchers.equalTo(or)
+            );
+            memory.bitwiseXor(src);
+            MatcherAssert.assertThat(
+                    String.format("Bulk xor with %s is lost", src.getClass()),
+                    memory.bitCount(),
+                    CoreMatchers.equalTo(xor)
+            );
+            memory.bitwiseOr(src);
+            memory.bitwiseAnd(src);
+            MatcherAssert.assertThat(
+                    String.format("Bulk and with %s is lost", src.getClass()),
+                    memory.bitCount(),
+                    CoreMatchers.equalTo(src.bitCount())
+            );
+            memory.bitwiseAndNot(memory);
+            MatcherAssert.assertThat(
+                    "Memory and-not itself must be empty",
+                    memory.bitCount(),
+                    CoreMatchers.equalTo(0L)
+            );
+        }
+    }
+
+    @Test
+    public void snapshotMemory() {
+        final int size = 1 << 8;
+        final int count = 1 << 14;
+        final SnapshotMemory<Integer> memory = new SnapshotMemory<>(size);
+        memory.fill(0, size, 0);
+        final ReadableMemory<Integer> empty = memory.snapshot();
+        final Queue<ReadableMemory<Integer>> snapshots = new ConcurrentLinkedQueue<>();
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = a & (size - 1);
+                executor.execute(() -> {
+                    for (Integer x; ; ) {
+                        x = memory.fetch(index);
+                        if (memory.compareAndStore(index, x, x + 1)) {
+                            break;
+                        }
+                    }
+                    if ((index & 31) == 0) {
+                        snapshots.add(memory.snapshot());
+                    }
+                });
+            }
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The counter at index %s is lost", index),
+                    memory.fetch(index),
+                    CoreMatchers.equalTo(count / size)
+            );
+            MatcherAssert.assertThat(
+                    "The snapshot must not see later writes",
+                    empty.fetch(index),
+                    CoreMatchers.equalTo(0)
+            );
+        }
+        // counters only grow, so point-in-time snapshots are ordered
+        final List<int[]> states = snapshots.stream()
+                .map(x -> x.stream().mapToInt(Integer::intValue).toArray())
+                .sorted(Comparator.comparingInt(x -> Arrays.stream(x).sum()))
+                .toList();
+        for (int i = 1; i < states.size(); ++i) {
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(
+                        String.format("The snapshot is torn at index %s", index),
+                        states.get(i - 1)[index] <= states.get(i)[index],
+                        CoreMatchers.equalTo(true)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void relaxedAccessModes() {
+        final int size = 1 << 6;
+        final int count = 1 << 14;
+        final List<ModifiableMemory<Long>> memories = List.of(
+                new ArrayMemory<>(size),
+                new SegmentsMemory<>(size),
+                new GrowableMemory<>(size),
+                new PagedMemory<>(size, 4),
+                new BitwiseSegmentsMemory<>(long.class, size),
+                new LongSegmentsMemory(size)
+        );
+        for (final ModifiableMemory<Long> memory : memories) {
+            for (int index = 0; index < size; ++index) {
+                memory.storePlain(index, 0L);
+            }
+            memory.storeOpaque(0, 0L);
+            try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+                for (int a = 0; a < count; ++a) {
+                    final int index = a & (size - 1);
+                    executor.execute(() -> {
+                        for (Long x; ; ) {
+                            x = memory.fetchOpaque(index);
+                            if (memory.weakCompareAndStoreRelease(index, x, x + 1)) {
+                                break;
+                            }
+                        }
+                    });
+                }
+            }
+            for (int index = 0; index < size; ++index) {
+                MatcherAssert.assertThat(
+                        String.format("The counter of %s at index %s is lost",
+                                memory.getClass(), index),
+                        memory.fetchPlain(index),
+                        CoreMatchers.equalTo((long) count / size)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void shrinkMemory() {
+        final int size = 1 << 10;
+        final int occupied = 100;
+        final LongModifiableMemory memory = new LongSegmentsMemory(size);
+        for (int index = 0; index < occupied; ++index) {
+            memory.storeLong(index, index);
+        }
+        MatcherAssert.assertThat(
+                "A memory must not shrink without a policy",
+                memory.trim(occupied, TrimPolicy.never()),
+                CoreMatchers.sameInstance(memory)
+        );
+        final LongModifiableMemory trimmed = memory.trim(occupied, TrimPolicy.quarter(2));
+        MatcherAssert.assertThat(
+                "A memory must halve while at most a quarter is occupied",
+                trimmed.length(),
+                CoreMatchers.equalTo(256)
+        );
+        for (int index = 0; index < occupied; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The leading cell at index %s is lost", index),
+                    trimmed.fetchLong(index),
+                    CoreMatchers.equalTo((long) index)
+            );
+        }
+        Assertions.assertThrows(
+                IndexOutOfBoundsException.class,
+                () -> trimmed.fetchLong(size - 1),
+                "Trailing segments must be released"
+        );
+        MatcherAssert.assertThat(
+                "The shrunk memory must keep at least one segment",
+                new SegmentsMemory<>(size).realloc(0).length(),
+                CoreMatchers.equalTo(2)
+        );
+    }
+
+    @Test
+    public void sparseMemory() {
+        final int size = 1 << 24;
+        final int count = 1 << 14;
+        final int[] ids = ThreadLocalRandom.current()
+                .ints(1 << 4, 0, size).distinct().toArray();
+        final ModifiableMemory<Integer> memory = SegmentsMemory.sparse(size);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = ids[a % ids.length];
+                executor.execute(() -> {
+                    for (Integer x; ; ) {
+                        x = memory.fetch(index);
+                        if (memory.compareAndStore(index, x, x == null ? 1 : x + 1)) {
+                            break;
+                        }
+                    }
+                });
+            }
+        }
+        final int[] counts = new int[ids.length];
+        for (int a = 0; a < count; ++a) {
+            counts[a % ids.length]++;
+        }
+        for (int i = 0; i < ids.length; ++i) {
+            MatcherAssert.assertThat(
+                    String.format("The counter at index %s is lost", ids[i]),
+                    memory.fetch(ids[i]),
+                    CoreMatchers.equalTo(counts[i])
+            );
+        }
+        final SparseMemory<Integer> pages = new SparseMemory<>(100, 4);
+        pages.store(97, 97);
+        MatcherAssert.assertThat(
+                "A partial page must survive realloc",
+                pages.realloc(99).fetch(97),
+                CoreMatchers.equalTo(97)
+        );
+        MatcherAssert.assertThat(
+                "An untouched cell must read as null",
+                pages.fetch(3),
+                CoreMatchers.nullValue()
+        );
+        final SparseMemory<Integer> grown = pages.realloc(1000);
+        pages.store(5, 5);
+        pages.store(97, 98);
+        MatcherAssert.assertThat(
+                "A page installed through the old memory must be shared",
+                grown.fetch(5),
+                CoreMatchers.equalTo(5)
+        );
+        MatcherAssert.assertThat(
+                "A write through the old memory must be shared",
+                grown.fetch(97),
+                CoreMatchers.equalTo(98)
+        );
+        grown.store(999, 999);
+        MatcherAssert.assertThat(
+                "A shrink must narrow the result only",
+                grown.realloc(990).length(),
+                CoreMatchers.equalTo(990)
+        );
+        MatcherAssert.assertThat(
+                "A shrink must leave the memory it is called on as it was",
+                grown.fetch(999),
+                CoreMatchers.equalTo(999)
+        );
+        MatcherAssert.assertThat(
+                "A shrink must leave the boundary page as it was",
+                pages.realloc(99).fetch(97),
+                CoreMatchers.equalTo(98)
+        );
+    }
+
+    @Test
+    public void pagedMemory() {
+        final int size = 5000;
+        final PagedMemory<Integer> memory = new PagedMemory<>(size);
+        MatcherAssert.assertThat(
+                "Capacity must exceed the size by less than a page",
+                memory.length(),
+                CoreMatchers.equalTo(2 << 12)
+        );
+        for (int index = 0; index < size; ++index) {
+            memory.store(index, index);
+        }
+        final PagedMemory<Integer> grown = memory.realloc(size << 2);
+        memory.store(0, -1);
+        MatcherAssert.assertThat(
+                "Pages must be shared with the realloc",
+                grown.fetch(0),
+                CoreMatchers.equalTo(-1)
+        );
+        final List<Integer> values = new ArrayList<>();
+        grown.forEachIndexed((1 << 12) - 2, (1 << 12) + 2, (x, i) -> values.add(i));
+        MatcherAssert.assertThat(
+                "Traversal must cross the page boundary",
+                values,
+                CoreMatchers.equalTo(List.of(4094, 4095, 4096, 4097))
+        );
+    }
+
+    @Test
+    public void accumulateFloatingMemory() {
+        final int size = 1 << 4;
+        final int count = 1 << 14;
+        final DoubleModifiableMemory doubles = new DoubleSegmentsMemory(2).realloc(size);
+        final FloatModifiableMemory floats = new FloatSegmentsMemory(size);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = a & (size - 1);
+                final int value = a;
+                executor.execute(() -> {
+                    doubles.fetchAndAddDouble(index, 0.5);
+                    if (index == 0) {
+                        floats.fetchAndMinFloat(index, -value);
+                    } else {
+                        floats.fetchAndMaxFloat(index, value);
+                    }
+                });
+            }
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The sum at index %s is lost", index),
+                    doubles.fetch(index),
+                    CoreMatchers.equalTo(0.5 * count / size)
+            );
+            MatcherAssert.assertThat(
+                    String.format("The extremum at index %s is lost", index),
+                    floats.fetchFloat(index),
+                    CoreMatchers.equalTo(index == 0
+                            ? (float) -(count - size)
+                            : (float) (count - size + index))
+            );
+        }
+    }
+
+    @Test
+    public void transferWithMultiCas() {
+        final int size = 1 << 3;
+        final int count = 1 << 14;
+        final int balance = 1 << 10;
+        final MultiCasMemory<Integer> accounts = new MultiCasMemory<>(size);
+        accounts.fill(0, size, balance);
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int from = a & (size - 1);
+                final int to = (from + 1 + (a >>> 3) % (size - 1)) & (size - 1);
+                executor.execute(() -> {
+                    for (; ; ) {
+                        final Integer x = accounts.fetch(from);
+                        final Integer y = accounts.fetch(to);
+                        if (accounts.compareAndStoreAll(
+                                new int[]{from, to},
+                                new Integer[]{x, y},
+                                new Integer[]{x - 1, y + 1})) {
+                            break;
+                        }
+                    }
+                });
+                if ((a & 255) == 0) {
+                    // single-cell writes must not break in-flight transfers
+                    executor.execute(() -> accounts.transform(from, x -> x + 0));
+                }
+            }
+        }
+        MatcherAssert.assertThat(
+                "Transfers must keep the total",
+                accounts.stream().mapToInt(Integer::intValue).sum(),
+                CoreMatchers.equalTo(size * balance)
+        );
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> accounts.compareAndStoreAll(
+                        new int[]{1, 1},
+                        new Integer[]{0, 0},
+                        new Integer[]{1, 1}),
+                "Duplicate indices must be rejected"
+        );
+    }
+
+    @Test
+    public void combineTransforms() {
+        final int size = 1 << 2;
+        final int count = 1 << 14;
+        final ModifiableMemory<Long> origin = new LongSegmentsMemory(size);
+        final CombiningMemory<Long> memory = new CombiningMemory<>(origin);
+        final int[] all = {0, 1, 2, 3};
+        try (final ExecutorService executor = Executors.newWorkStealingPool()) {
+            for (int a = 0; a < count; ++a) {
+                final int index = a & (size - 1);
+                executor.execute(() -> {
+                    memory.transform(index, x -> x + 1);
+                    origin.transform(index, x -> x + 1);
+                    memory.transformAll(all, x -> x + 1);
+                });
+            }
+        }
+        for (int index = 0; index < size; ++index) {
+            MatcherAssert.assertThat(
+                    String.format("The counter at index %s is lost", index),
+                    memory.fetch(index),
+                    CoreMatchers.equalTo((long) count / size * 2 + count)
+            );
+        }
+        Assertions.assertThrows(
+                ArithmeticException.class,
+                () -> memory.transform(0, x -> x / 0),
+                "A failing operator must fail its caller"
+        );
+        MatcherAssert.assertThat(
+                "A failing operator must not change the cell",
+                ((LongModifiableMemory) origin).transformLong(0, x -> x - count),
+                CoreMatchers.equalTo((long) count / size * 2)
+        );
+        // more threads than slots and cores: waiters park, the rest go direct
+        final CombiningMemory<Long> narrow = new CombiningMemory<>(new LongSegmentsMemory(size), 2);
+        try (final ExecutorService executor = Executors.newFixedThreadPool(32)) {
+            for (int a = 0; a < count; ++a) {
+                executor.execute(() -> narrow.transform(0, x -> x + 1));
+            }
+        }
+        MatcherAssert.assertThat(
+                "The combined counter is lost",
+                narrow.fetch(0),
+                CoreMatchers.equalTo((long) count)
+        );
+    }
 }